@@ -0,0 +1,46 @@
+/**
+ * Log.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package android.util;
+
+/**
+ * 在JVM上运行SDK代码时代替android.util.Log, 输出到标准错误
+ * android.jar中的实现只是stub, 调用时会抛出异常
+ */
+public final class Log {
+
+    private Log() {}
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg, null);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println("W", tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println("E", tag, msg, tr);
+    }
+
+    private static int println(String level, String tag, String msg, Throwable tr) {
+        System.err.println(level + "/" + tag + ": " + msg);
+        if (tr != null)
+            tr.printStackTrace();
+        return 0;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * BCLoadTestHosts.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+/**
+ * 压力测试替换SDK访问的主机
+ * BeeCloud.setHosts只在包内可见, 避免应用在正式环境中误用, 压力测试通过本类访问
+ */
+public final class BCLoadTestHosts {
+
+    private BCLoadTestHosts() {
+    }
+
+    /**
+     * @param hosts 主机地址, 例如http://127.0.0.1:8080, 不包含/1/等路径; 不传时恢复为BeeCloud的主机
+     */
+    public static void setHosts(String... hosts) {
+        BeeCloud.setHosts(hosts);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * BCQueryOrderResultBenchmark.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.benchmark;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.entity.BCBill;
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCRestfulCommonResult;
+
+/**
+ * 订单查询结果的解析, 每页10到50个订单
+ * legacyMap为原来的解析方式: 每次新建Gson解析为HashMap, 再逐个转为BCBill
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BCQueryOrderResultBenchmark {
+
+    @Param({"10", "20", "50"})
+    public int pageSize;
+
+    private String json;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        json = buildBillsPage(pageSize);
+        jsonBytes = json.getBytes("UTF-8");
+    }
+
+    /**
+     * 生成与服务端格式一致的订单列表
+     */
+    static String buildBillsPage(int count) {
+        StringBuilder builder = new StringBuilder(count * 160);
+        builder.append("{\"result_code\":0,\"result_msg\":\"OK\",\"err_detail\":\"\",\"count\":")
+                .append(count).append(",\"bills\":[");
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                builder.append(',');
+
+            builder.append("{\"bill_no\":\"bc").append(1440000000000L + i)
+                    .append("\",\"total_fee\":").append(100 + i)
+                    .append(",\"channel\":\"WX\",\"sub_channel\":\"WX_APP\",\"title\":\"安卓微信支付测试\"")
+                    .append(",\"spay_result\":").append(i % 2 == 0)
+                    .append(",\"created_time\":").append(1440000000000L + i * 1000L)
+                    .append('}');
+        }
+
+        return builder.append("]}").toString();
+    }
+
+    @Benchmark
+    public BCRestfulCommonResult parseString() {
+        return new BCQueryOrderResult().transJsonToResultObject(json);
+    }
+
+    @Benchmark
+    public BCQueryOrderResult parseStream() throws IOException {
+        return BCQueryOrderResult.transStreamToResultObject(new ByteArrayInputStream(jsonBytes));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<BCBill> legacyMap() {
+        Map<String, Object> responseMap = new Gson().fromJson(json, HashMap.class);
+        List<Map<String, Object>> billsMap = (List<Map<String, Object>>) responseMap.get("bills");
+
+        List<BCBill> bills = new ArrayList<BCBill>(billsMap.size());
+        for (Map<String, Object> bill : billsMap)
+            bills.add(BCBill.transMapToBill(bill));
+        return bills;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * BCRequestParamsBenchmark.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.benchmark;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.BCCache;
+import cn.beecloud.BCException;
+import cn.beecloud.entity.BCPayReqParams;
+import cn.beecloud.entity.BCQueryReqParams;
+import cn.beecloud.entity.BCReqParams;
+
+/**
+ * 请求参数的序列化
+ * payMapWithNewGson为原来的发送方式: 先生成Map, 每次新建Gson转为json串再编码,
+ * payJsonBody为SDK现在的发送方式: 直接写入线程复用的字节缓冲
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BCRequestParamsBenchmark {
+
+    private BCPayReqParams payParams;
+    private BCQueryReqParams queryParams;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+    @Setup
+    public void setup() throws BCException {
+        BCCache.getInstance().appId = "c5d1cba1-5e3f-4ba0-941d-9b0a371fe719";
+        BCCache.getInstance().appSecret = "39a7a518-9ac8-4a9e-87bc-7885f33cf18c";
+
+        payParams = new BCPayReqParams(BCReqParams.BCChannelTypes.WX_APP);
+        payParams.totalFee = 1;
+        payParams.billNum = "bc1440000000000";
+        payParams.title = "安卓微信支付测试";
+        payParams.optional = new HashMap<String, String>();
+        payParams.optional.put("testkey1", "测试value值1");
+
+        queryParams = new BCQueryReqParams(BCReqParams.BCChannelTypes.ALI);
+        queryParams.startTime = 1440000000000L;
+        queryParams.endTime = 1440086400000L;
+        queryParams.skip = 0;
+        queryParams.limit = 50;
+    }
+
+    @Benchmark
+    public Map<String, Object> payBillReqMapParams() {
+        return payParams.transToBillReqMapParams();
+    }
+
+    @Benchmark
+    public byte[] payMapWithNewGson() throws UnsupportedEncodingException {
+        //与原来的StringEntity一样编码为UTF-8字节
+        return new Gson().toJson(payParams.transToBillReqMapParams()).getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public int payJsonBody() throws IOException {
+        //写入复用的输出流, 模拟发送请求体
+        out.reset();
+        payParams.transToJsonBody().writeTo(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public String queryEncodedJsonString() {
+        return queryParams.transToEncodedJsonString();
+    }
+
+    @Benchmark
+    public String queryEncodedJsonStringWithSign() throws BCException {
+        //包含构造参数时的签名
+        BCQueryReqParams params = new BCQueryReqParams(BCReqParams.BCChannelTypes.ALI);
+        params.limit = 50;
+        return params.transToEncodedJsonString();
+    }
+}
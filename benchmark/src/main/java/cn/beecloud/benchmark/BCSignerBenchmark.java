@@ -0,0 +1,57 @@
+/**
+ * BCSignerBenchmark.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.BCMD5Util;
+import cn.beecloud.BCSigner;
+
+/**
+ * 请求签名的单次开销
+ * md5Util为原来每个请求的做法: 拼接字符串, 获取MessageDigest, 默认编码getBytes;
+ * signer为BCSigner每次使用新的时间戳; signerSameTimestamp为批量请求共用时间戳的情况
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BCSignerBenchmark {
+
+    private static final String APP_ID = "c5d1cba1-5e3f-4ba0-941d-9b0a371fe719";
+    private static final String APP_SECRET = "39a7a518-9ac8-4a9e-87bc-7885f33cf18c";
+
+    private BCSigner signer;
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        signer = new BCSigner(APP_ID, APP_SECRET);
+        timestamp = 1440000000000L;
+    }
+
+    @Benchmark
+    public String md5Util() {
+        return BCMD5Util.getMessageDigest(APP_ID + (++timestamp) + APP_SECRET);
+    }
+
+    @Benchmark
+    public String signer() {
+        return signer.sign(++timestamp).getSign();
+    }
+
+    @Benchmark
+    public String signerSameTimestamp() {
+        return signer.sign(timestamp).getSign();
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * BCValidationUtilBenchmark.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.BCValidationUtil;
+
+/**
+ * 支付参数校验
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BCValidationUtilBenchmark {
+
+    public String billNum = "bc1440000000000";
+    public String totalFee = "12345";
+    public String returnUrl = "https://beecloud.cn/return/index.html";
+
+    @Benchmark
+    public boolean validString() {
+        return BCValidationUtil.isValidString(billNum);
+    }
+
+    @Benchmark
+    public boolean validPositiveInt() {
+        return BCValidationUtil.isStringValidPositiveInt(totalFee);
+    }
+
+    @Benchmark
+    public boolean validURL() {
+        return BCValidationUtil.isStringValidURL(returnUrl);
+    }
+}
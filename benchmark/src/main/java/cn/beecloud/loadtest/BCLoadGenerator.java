@@ -0,0 +1,198 @@
+/**
+ * BCLoadGenerator.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.loadtest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import cn.beecloud.BCApacheHttpTransport;
+import cn.beecloud.BCLoadTestHosts;
+import cn.beecloud.BCPay;
+import cn.beecloud.BCQuery;
+import cn.beecloud.BeeCloud;
+import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCResult;
+import cn.beecloud.entity.BCReqParams;
+import cn.beecloud.entity.BCRestfulCommonResult;
+
+/**
+ * 以固定速率驱动BCQuery或BCPay二维码请求的压力测试
+ * 请求按计划时间发出, 不等待之前的请求完成(open loop);
+ * 延迟从计划发出时间开始计算, 因此包含SDK线程池排队以及发送落后于计划的时间,
+ * 不会因为服务变慢而少算尾部延迟
+ * 结束后输出p50/p99/p999延迟、错误率和实际的请求速率
+ *
+ * 未指定--host时在本地启动BCMockServer:
+ * gradle :benchmark:loadTest -PloadArgs="--target query --rate 200 --duration 30 --median 30 --p99 300"
+ * --target可以为query, refund或者qrcode
+ * --transport可以为urlconnection(默认), apache, 或者memory(进程内直接由BCMockServer处理, 不经过网络)
+ */
+public class BCLoadGenerator {
+
+    private static final String APP_ID = "c5d1cba1-5e3f-4ba0-941d-9b0a371fe719";
+    private static final String APP_SECRET = "39a7a518-9ac8-4a9e-87bc-7885f33cf18c";
+
+    private final BCLoadOptions options;
+
+    //计划时间在warmupEnd之后的请求才计入结果
+    private long warmupEnd;
+
+    private long[] latencies;
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong warmupRequests = new AtomicLong();
+
+    BCLoadGenerator(BCLoadOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * 按计划发出所有请求并等待完成
+     * @return  测量阶段实际的请求速率, 每秒请求数
+     */
+    double run() throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate);
+        int warmupCount = (int) (options.rate * options.warmupSeconds);
+        int total = warmupCount + (int) (options.rate * options.durationSeconds);
+
+        latencies = new long[total - warmupCount];
+        final CountDownLatch completion = new CountDownLatch(total);
+
+        long start = System.nanoTime();
+        warmupEnd = start + warmupCount * intervalNanos;
+
+        for (int i = 0; i < total; i++) {
+            final long intended = start + i * intervalNanos;
+
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            issue(i, new BCCallback() {
+                @Override
+                public void done(BCResult result) {
+                    record(intended, result);
+                    completion.countDown();
+                }
+            });
+        }
+
+        long issued = System.nanoTime();
+        completion.await();
+
+        return (total - warmupCount) / ((double) (issued - warmupEnd) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void issue(int seq, BCCallback callback) {
+        if ("qrcode".equals(options.target)) {
+            BCPay.getInstance(null).reqWXQRCodeAsync("load test", 1, "load" + System.currentTimeMillis() + seq,
+                    null, false, null, callback);
+        } else if ("refund".equals(options.target)) {
+            BCQuery.getInstance().queryRefundsAsync(BCReqParams.BCChannelTypes.WX, null, null,
+                    null, null, seq % 100 * options.limit, options.limit, callback);
+        } else {
+            BCQuery.getInstance().queryBillsAsync(BCReqParams.BCChannelTypes.WX, null,
+                    null, null, seq % 100 * options.limit, options.limit, callback);
+        }
+    }
+
+    private void record(long intended, BCResult result) {
+        long latency = System.nanoTime() - intended;
+
+        if (intended < warmupEnd) {
+            warmupRequests.incrementAndGet();
+            return;
+        }
+
+        BCRestfulCommonResult common = (BCRestfulCommonResult) result;
+        if (common.getResultCode() == null || common.getResultCode() != 0) {
+            errors.incrementAndGet();
+            //线程池拒绝时直接回调, 没有发出请求
+            if (common.getErrDetail() != null && common.getErrDetail().contains("线程池已满"))
+                rejected.incrementAndGet();
+        }
+
+        int index = recorded.getAndIncrement();
+        if (index < latencies.length)
+            latencies[index] = latency;
+    }
+
+    private void report(double achievedRate) {
+        int count = Math.min(recorded.get(), latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+
+        System.out.println("target:        " + options.target + " via " + options.transport);
+        System.out.println("requests:      " + count + " (warmup " + warmupRequests.get() + ")");
+        System.out.printf("rate:          %.1f/s target, %.1f/s achieved%n", options.rate, achievedRate);
+        System.out.printf("errors:        %d (%.3f%%), rejected %d%n", errors.get(),
+                count == 0 ? 0 : errors.get() * 100.0 / count, rejected.get());
+        System.out.printf("latency(ms):   p50 %.2f, p99 %.2f, p999 %.2f, max %.2f%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), percentile(sorted, 1));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BCLoadOptions options = BCLoadOptions.parse(args);
+
+        BCMockServer server = null;
+        String host = options.host;
+        if ("memory".equals(options.transport)) {
+            server = options.createServer();
+            host = "http://127.0.0.1";
+            BeeCloud.setHttpTransport(new BCInMemoryTransport(server));
+        } else {
+            if (host == null) {
+                server = options.createServer();
+                server.start();
+                host = server.getHost();
+            }
+
+            if ("apache".equals(options.transport)) {
+                BeeCloud.setHttpTransport(new BCApacheHttpTransport());
+            } else {
+                //HttpURLConnection每个主机保留的空闲连接数, 需在第一次请求前设置
+                System.setProperty("http.maxConnections", String.valueOf(options.connections));
+            }
+        }
+
+        BeeCloud.setAppIdAndSecret(APP_ID, APP_SECRET);
+        BCLoadTestHosts.setHosts(host);
+        BeeCloud.setThreadPoolSize(options.payThreads, options.queryThreads);
+        BeeCloud.setThreadPoolQueueCapacity(options.queueCapacity, options.queueCapacity);
+        //模拟服务只有一个主机, 默认每个主机的连接数会成为瓶颈
+        BeeCloud.setConnectionPoolSize(options.connections, options.connections);
+
+        BCLoadGenerator generator = new BCLoadGenerator(options);
+        try {
+            generator.report(generator.run());
+
+            if (server != null)
+                System.out.println("server:        " + server.getRequestCount() + " requests, " +
+                        server.getErrorCount() + " injected errors, " +
+                        server.getBodyBytes() / 1024 + " KB response body");
+        } finally {
+            if (server != null)
+                server.stop();
+        }
+
+        System.exit(0);
+    }
+}
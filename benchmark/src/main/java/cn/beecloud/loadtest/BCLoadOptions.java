@@ -0,0 +1,102 @@
+/**
+ * BCLoadOptions.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.loadtest;
+
+/**
+ * BCMockServer和BCLoadGenerator共用的命令行参数
+ */
+class BCLoadOptions {
+
+    //模拟服务
+    int port;
+    double medianMillis = 20;
+    double p99Millis = 200;
+    double errorRate;
+    boolean compression = true;
+    int maxPageSize = 50;
+    int totalOrders = 10000;
+
+    //压力测试
+    String host;
+    String target = "query";
+    String transport = "urlconnection";
+    int limit = 10;
+    double rate = 100;
+    int durationSeconds = 30;
+    int warmupSeconds = 5;
+    int payThreads = 16;
+    int queryThreads = 16;
+    int queueCapacity = 1024;
+    int connections = 32;
+
+    /**
+     * 解析--name value形式的参数, 未指定的参数使用默认值
+     */
+    static BCLoadOptions parse(String[] args) {
+        BCLoadOptions options = new BCLoadOptions();
+
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("缺少参数值: " + name);
+            String value = args[++i];
+
+            if ("--port".equals(name))
+                options.port = Integer.parseInt(value);
+            else if ("--median".equals(name))
+                options.medianMillis = Double.parseDouble(value);
+            else if ("--p99".equals(name))
+                options.p99Millis = Double.parseDouble(value);
+            else if ("--error-rate".equals(name))
+                options.errorRate = Double.parseDouble(value);
+            else if ("--compress".equals(name))
+                options.compression = Boolean.parseBoolean(value);
+            else if ("--page-size".equals(name))
+                options.maxPageSize = Integer.parseInt(value);
+            else if ("--total".equals(name))
+                options.totalOrders = Integer.parseInt(value);
+            else if ("--host".equals(name))
+                options.host = value;
+            else if ("--target".equals(name))
+                options.target = value;
+            else if ("--limit".equals(name))
+                options.limit = Integer.parseInt(value);
+            else if ("--transport".equals(name))
+                options.transport = value;
+            else if ("--rate".equals(name))
+                options.rate = Double.parseDouble(value);
+            else if ("--duration".equals(name))
+                options.durationSeconds = Integer.parseInt(value);
+            else if ("--warmup".equals(name))
+                options.warmupSeconds = Integer.parseInt(value);
+            else if ("--pay-threads".equals(name))
+                options.payThreads = Integer.parseInt(value);
+            else if ("--query-threads".equals(name))
+                options.queryThreads = Integer.parseInt(value);
+            else if ("--queue".equals(name))
+                options.queueCapacity = Integer.parseInt(value);
+            else if ("--connections".equals(name))
+                options.connections = Integer.parseInt(value);
+            else
+                throw new IllegalArgumentException("未知参数: " + name);
+        }
+
+        return options;
+    }
+
+    /**
+     * @return  按参数配置好, 但还未启动的模拟服务
+     */
+    BCMockServer createServer() {
+        BCMockServer server = new BCMockServer(port);
+        server.setLatency(medianMillis, p99Millis);
+        server.setErrorRate(errorRate);
+        server.setCompression(compression);
+        server.setMaxPageSize(maxPageSize);
+        server.setTotalOrders(totalOrders);
+        return server;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * BCMockServer.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 本地模拟的BeeCloud REST服务, 用于压力和延迟测试
+ * 通过http提供BCMockService的接口, 延迟、错误率等设置见BCMockService
+ * 通过BCLoadTestHosts.setHosts("http://127.0.0.1:" + port)让SDK访问本服务,
+ * 或者通过BCInMemoryTransport在进程内直接处理请求, 不经过网络
+ *
+ * 单独运行: gradle :benchmark:mockServer -PmockArgs="--port 8080 --median 30 --p99 300 --error-rate 0.01"
+ */
+public class BCMockServer extends BCMockService {
+
+    private final int port;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * 构造函数
+     * @param port  监听的端口, 0表示自动分配
+     */
+    public BCMockServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * 启动服务
+     * @throws IOException  端口无法监听
+     */
+    public void start() throws IOException {
+        //响应头和响应体分开写入, 不关闭Nagle算法时每个请求会多出约40ms的延迟确认等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Response response = encode(BCMockServer.this.handle(exchange.getRequestURI().getPath(),
+                            exchange.getRequestURI().getRawQuery(), exchange.getRequestBody()),
+                            exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+
+                    if (response.body.length == 0) {
+                        exchange.sendResponseHeaders(response.statusCode, -1);
+                    } else {
+                        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                        if (response.contentEncoding != null)
+                            exchange.getResponseHeaders().set("Content-Encoding", response.contentEncoding);
+                        exchange.sendResponseHeaders(response.statusCode, response.body.length);
+                        OutputStream out = exchange.getResponseBody();
+                        out.write(response.body);
+                        out.close();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    exchange.sendResponseHeaders(503, -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        server.start();
+    }
+
+    /**
+     * 停止服务
+     */
+    public void stop() {
+        if (server != null)
+            server.stop(0);
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * @return  实际监听的端口
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return  SDK使用的主机地址
+     */
+    public String getHost() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public static void main(String[] args) throws IOException {
+        BCLoadOptions options = BCLoadOptions.parse(args);
+
+        BCMockServer server = options.createServer();
+        server.start();
+
+        System.out.println("BeeCloud mock server listening on " + server.getHost());
+    }
+}
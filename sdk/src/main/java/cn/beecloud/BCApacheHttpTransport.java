@@ -0,0 +1,292 @@
+/**
+ * BCApacheHttpTransport.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Apache HttpClient的BCHttpTransport
+ * Android自带的HttpClient已不再维护, 仅用于兼容之前的行为, 比如接受所有的服务端证书
+ * 连接池大小和空闲连接保留时间来自BCCache, 通过BCContentEncoding声明接受压缩, 压缩的内容原样返回
+ */
+public class BCApacheHttpTransport implements BCHttpTransport {
+
+    //共享的HttpClient实例, 所有请求复用其连接池中的keep-alive连接
+    private DefaultHttpClient httpClient;
+
+    //上次清理空闲连接的时间, 毫秒时间戳
+    private volatile long lastIdleEvictionTime;
+
+    /**
+     * 获取共享的HttpClient实例, 首次调用时创建
+     * @return  DefaultHttpClient实例
+     */
+    public synchronized DefaultHttpClient getClient() {
+        if (httpClient == null) {
+            httpClient = createClient();
+            lastIdleEvictionTime = System.currentTimeMillis();
+        }
+        return httpClient;
+    }
+
+    /**
+     * 创建带有连接池的HttpClient
+     * @return  DefaultHttpClient实例
+     */
+    private static DefaultHttpClient createClient() {
+        final BCCache cache = BCCache.getInstance();
+
+        SSLSocketFactory sf;
+        try {
+            KeyStore trustStore = KeyStore.getInstance(KeyStore
+                    .getDefaultType());
+            trustStore.load(null, null);
+            sf = new BCSSLSocketFactory(trustStore);
+            sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        } catch (Exception e) {
+            sf = SSLSocketFactory.getSocketFactory();
+        }
+
+        HttpParams params = new BasicHttpParams();
+
+        HttpConnectionParams.setConnectionTimeout(params, cache.networkTimeout);
+        HttpConnectionParams.setSoTimeout(params, cache.networkTimeout);
+
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+
+        //连接池大小, 以及从池中获取连接的等待时间
+        ConnManagerParams.setMaxTotalConnections(params, cache.connectionPoolMaxTotal);
+        ConnManagerParams.setMaxConnectionsPerRoute(params,
+                new ConnPerRouteBean(cache.connectionPoolMaxPerRoute));
+        ConnManagerParams.setTimeout(params, cache.networkTimeout);
+
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory
+                .getSocketFactory(), 80));
+        registry.register(new Scheme("https", sf, 443));
+
+        ClientConnectionManager ccm = new ThreadSafeClientConnManager(
+                params, registry);
+
+        DefaultHttpClient client = new DefaultHttpClient(ccm, params);
+
+        //服务端未声明keep-alive时长时, 连接最多保留connectionIdleTimeout
+        client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long idleTimeout = cache.connectionIdleTimeout;
+                long duration = super.getKeepAliveDuration(response, context);
+                return (duration > 0 && duration < idleTimeout) ? duration : idleTimeout;
+            }
+        });
+
+        return client;
+    }
+
+    /**
+     * 关闭共享的HttpClient并释放连接池中的所有连接
+     * 之后的请求会重新创建HttpClient
+     */
+    @Override
+    public void shutdown() {
+        DefaultHttpClient client;
+        synchronized (this) {
+            client = httpClient;
+            httpClient = null;
+        }
+
+        if (client != null)
+            client.getConnectionManager().shutdown();
+    }
+
+    /**
+     * 清理连接池中空闲时间超过connectionIdleTimeout的连接
+     * 每个清理周期最多执行一次
+     */
+    private void evictIdleConnections(DefaultHttpClient client) {
+        long idleTimeout = BCCache.getInstance().connectionIdleTimeout;
+        long now = System.currentTimeMillis();
+
+        if (now - lastIdleEvictionTime < idleTimeout / 2)
+            return;
+
+        lastIdleEvictionTime = now;
+        client.getConnectionManager().closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public BCHttpResponse execute(BCHttpRequest request) throws IOException {
+        DefaultHttpClient client = getClient();
+        evictIdleConnections(client);
+
+        final HttpRequestBase httpRequest;
+        if (BCHttpRequest.METHOD_POST.equals(request.getMethod())) {
+            HttpPost httpPost = new HttpPost(request.getUrl());
+            if (request.getBody() != null)
+                httpPost.setEntity(toEntity(request.getBody()));
+            httpRequest = httpPost;
+        } else {
+            httpRequest = new HttpGet(request.getUrl());
+        }
+
+        BCContentEncoding.acceptCompressed(request);
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+            httpRequest.setHeader(header.getKey(), header.getValue());
+
+        //为单个请求设置超时时间, 使setNetworkTimeout对共享的HttpClient立即生效
+        if (request.getTimeout() > 0) {
+            HttpConnectionParams.setConnectionTimeout(httpRequest.getParams(), request.getTimeout());
+            HttpConnectionParams.setSoTimeout(httpRequest.getParams(), request.getTimeout());
+        }
+
+        request.setAbortAction(new Runnable() {
+            @Override
+            public void run() {
+                httpRequest.abort();
+            }
+        });
+
+        HttpResponse response = client.execute(httpRequest);
+
+        Map<String, String> headers = new HashMap<String, String>();
+        for (Header header : response.getAllHeaders())
+            headers.put(header.getName().toLowerCase(Locale.US), header.getValue());
+
+        //关闭数据流时, HttpClient会读完剩余内容并将连接放回连接池
+        HttpEntity entity = response.getEntity();
+        InputStream content = entity == null ? null : entity.getContent();
+
+        return new BCHttpResponse(response.getStatusLine().getStatusCode(), headers, content);
+    }
+
+    /**
+     * 将HttpEntity作为请求体, 由本transport执行时直接发送原来的HttpEntity
+     * @param entity    HttpEntity实例
+     * @return          请求体
+     */
+    static BCHttpRequest.Body toBody(HttpEntity entity) {
+        if (entity instanceof BCHttpRequest.Body)
+            return (BCHttpRequest.Body) entity;
+
+        return new EntityBody(entity);
+    }
+
+    private static HttpEntity toEntity(BCHttpRequest.Body body) {
+        if (body instanceof HttpEntity)
+            return (HttpEntity) body;
+
+        if (body instanceof EntityBody)
+            return ((EntityBody) body).entity;
+
+        return new BodyEntity(body);
+    }
+
+    /**
+     * 以HttpEntity实现的请求体
+     */
+    private static class EntityBody implements BCHttpRequest.Body {
+        final HttpEntity entity;
+
+        EntityBody(HttpEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public String getMediaType() {
+            Header contentType = entity.getContentType();
+            return contentType == null ? null : contentType.getValue();
+        }
+
+        @Override
+        public long getContentLength() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            entity.writeTo(outstream);
+        }
+    }
+
+    /**
+     * 将请求体包装为HttpEntity
+     */
+    private static class BodyEntity extends AbstractHttpEntity {
+        private final BCHttpRequest.Body body;
+
+        BodyEntity(BCHttpRequest.Body body) {
+            this.body = body;
+            setContentType(body.getMediaType());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.getContentLength();
+        }
+
+        /**
+         * 重试和日志等需要读取内容时, 将请求体写入内存后返回
+         */
+        @Override
+        public InputStream getContent() throws IOException {
+            long length = body.getContentLength();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    length > 0 && length <= Integer.MAX_VALUE ? (int) length : 1024);
+            body.writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            body.writeTo(outstream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * BCBillExporter.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import cn.beecloud.entity.BCBill;
+import cn.beecloud.entity.BCJsonCodec;
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCReqParams;
+
+/**
+ * 支付订单批量导出
+ * 将[startTime, endTime)按时间切分成多个区间, 每个渠道的每个区间作为一个任务并发查询,
+ * 并发数有上限; 查询结果以每行一个json的格式逐步写入本地文件
+ * 每个区间只保留创建时间落在本区间内的订单, 并在区间内按billNum去重,
+ * 避免区间边界和分页偏移导致的重复记录
+ * 导出会阻塞调用线程, 不能在UI线程调用
+ */
+public class BCBillExporter {
+
+    //单页抓取的记录数
+    private static final int PAGE_SIZE = 50;
+
+    //默认的时间区间长度, 以毫秒为单位
+    private static final long DEFAULT_SLICE_MILLIS = 60L * 60 * 1000;
+
+    //默认的最大并发数
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private final List<BCReqParams.BCChannelTypes> channels;
+    private final long startTime;
+    private final long endTime;
+
+    private long sliceMillis = DEFAULT_SLICE_MILLIS;
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    /**
+     * 构造函数
+     * @param channels      需要导出的渠道, 比如WX, ALI, UN
+     * @param startTime     起始时间(包含), 毫秒时间戳, 13位
+     * @param endTime       结束时间(不包含), 毫秒时间戳, 13位
+     */
+    public BCBillExporter(List<BCReqParams.BCChannelTypes> channels, long startTime, long endTime) {
+        if (channels == null || channels.isEmpty())
+            throw new IllegalArgumentException("channels不能为空");
+
+        if (endTime <= startTime)
+            throw new IllegalArgumentException("endTime必须大于startTime");
+
+        this.channels = new ArrayList<BCReqParams.BCChannelTypes>(channels);
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    /**
+     * 设置时间区间长度, 订单越密集区间应该越小
+     * @param sliceMillis   区间长度, 以毫秒为单位, 默认1小时
+     */
+    public void setSliceMillis(long sliceMillis) {
+        if (sliceMillis <= 0)
+            throw new IllegalArgumentException("sliceMillis必须大于0");
+
+        this.sliceMillis = sliceMillis;
+    }
+
+    /**
+     * 设置最大并发数
+     * @param concurrency   同时进行的查询数, 默认为4
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency <= 0)
+            throw new IllegalArgumentException("concurrency必须大于0");
+
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * 导出订单到文件, 文件已存在时覆盖
+     * 每行为一个订单的json, 字段与服务端返回的一致; 不同区间的订单之间不保证顺序
+     * @param file          导出的文件
+     * @return              导出的订单数
+     * @throws BCException  查询失败或者写入文件失败, 此时已写入的文件会被删除
+     */
+    public int exportTo(File file) throws BCException {
+        List<Slice> slices = new ArrayList<Slice>();
+        for (BCReqParams.BCChannelTypes channel : channels) {
+            for (long sliceStart = startTime; sliceStart < endTime; sliceStart += sliceMillis)
+                slices.add(new Slice(channel, sliceStart, Math.min(endTime, sliceStart + sliceMillis)));
+        }
+
+        BCTaskExecutor executor = new BCTaskExecutor("export", concurrency, slices.size());
+        Writer writer = null;
+        boolean succeeded = false;
+
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            final Writer output = writer;
+
+            ExecutorCompletionService<Integer> completionService =
+                    new ExecutorCompletionService<Integer>(executor);
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>(slices.size());
+            for (final Slice slice : slices) {
+                futures.add(completionService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return slice.export(output);
+                    }
+                }));
+            }
+
+            int total = 0;
+            try {
+                for (int i = 0; i < futures.size(); i++)
+                    total += completionService.take().get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new BCException(cause instanceof BCException ? cause.getMessage() :
+                        "导出失败: " + cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BCException("导出被中断");
+            } finally {
+                for (Future<Integer> future : futures)
+                    future.cancel(true);
+            }
+
+            synchronized (output) {
+                output.flush();
+            }
+            succeeded = true;
+            return total;
+        } catch (RejectedExecutionException e) {
+            throw new BCException("导出失败: " + e.getMessage());
+        } catch (IOException e) {
+            throw new BCException("写入文件失败: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+
+            if (!succeeded)
+                file.delete();
+        }
+    }
+
+    /**
+     * 单个渠道的一个时间区间
+     */
+    private static class Slice {
+        final BCReqParams.BCChannelTypes channel;
+        final long start;
+        final long end;
+
+        Slice(BCReqParams.BCChannelTypes channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * 逐页查询本区间的订单并写入文件
+         * @return  写入的订单数
+         */
+        int export(Writer output) throws BCException, IOException {
+            BCQuery query = BCQuery.getInstance();
+            Set<String> seen = new HashSet<String>();
+            StringBuilder lines = new StringBuilder(PAGE_SIZE * 128);
+            int skip = 0;
+            int written = 0;
+
+            while (!Thread.currentThread().isInterrupted()) {
+                BCQueryOrderResult result = query.queryBills(channel, null, start, end, skip, PAGE_SIZE);
+                if (result.getResultCode() == null || result.getResultCode() != 0)
+                    throw new BCException("查询" + channel + "订单失败: " + result.getResultMsg() +
+                            ", " + result.getErrDetail());
+
+                List<BCBill> orders = result.getOrders();
+                if (orders == null || orders.isEmpty())
+                    break;
+
+                lines.setLength(0);
+                for (BCBill bill : orders) {
+                    //边界上的订单只属于创建时间所在的区间
+                    Long createdTime = bill.getCreatedTime();
+                    if (createdTime != null && (createdTime < start || createdTime >= end))
+                        continue;
+
+                    //分页期间有新订单时, 上一页的订单可能再次出现
+                    if (bill.getBillNum() != null && !seen.add(bill.getBillNum()))
+                        continue;
+
+                    lines.append(BCJsonCodec.getGson().toJson(bill, BCBill.class)).append('\n');
+                    written++;
+                }
+
+                if (lines.length() > 0) {
+                    synchronized (output) {
+                        output.append(lines);
+                    }
+                }
+
+                if (orders.size() < PAGE_SIZE)
+                    break;
+
+                skip += orders.size();
+            }
+
+            return written;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/**
+ * BCBillStore.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.entity.BCBill;
+import cn.beecloud.entity.BCJsonCodec;
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCRefundOrder;
+import cn.beecloud.entity.BCReqParams;
+import cn.beecloud.entity.BCRestfulCommonResult;
+
+/**
+ * 本地持久化的订单存储
+ * 支付订单以billNum, 退款订单以refundNum为主键保存在SQLite中, 并按创建时间和渠道建立索引;
+ * 同步时只查询上次同步到的创建时间之后的订单, 历史订单直接从本地读取, 不需要网络请求
+ * 订单以json保存, 读取时通过BCJsonCodec还原
+ * 已经同步的订单之后发生的状态变化(比如支付完成)不会被增量同步获取, 可以通过refreshBill更新
+ * 所有方法都会访问数据库, 不建议在UI线程调用; 每个appId对应一个数据库文件
+ */
+public class BCBillStore {
+    private static final String TAG = "BCBillStore";
+
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_BILLS = "bills";
+    private static final String TABLE_REFUNDS = "refunds";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+
+    //同步状态中的订单类型
+    private static final String KIND_BILL = "bill";
+    private static final String KIND_REFUND = "refund";
+
+    //同步时每页抓取的记录数
+    private static final int SYNC_PAGE_SIZE = BCOrderIterator.MAX_PAGE_SIZE;
+
+    private final SQLiteOpenHelper helper;
+
+    private final Gson gson = BCJsonCodec.getGson();
+
+    /**
+     * 构造函数, 数据库在首次使用时创建
+     * @param context   Context, 只保留其ApplicationContext
+     */
+    public BCBillStore(Context context) {
+        helper = new StoreOpenHelper(context.getApplicationContext(),
+                "beecloud_bills_" + BCCache.getInstance().appId + ".db");
+    }
+
+    /**
+     * 同步支付订单, 只查询上次同步到的创建时间之后的订单并保存到本地
+     * 在调用线程中执行网络请求, 不能在UI线程调用
+     * @param channel   支付渠道类型
+     * @return          同步结果, 成功时getCount为本次保存的订单数, getOrders为null
+     */
+    public BCQueryOrderResult syncBills(BCReqParams.BCChannelTypes channel) {
+        return sync(channel, false);
+    }
+
+    /**
+     * 同步退款订单, 只查询上次同步到的退款创建时间之后的订单并保存到本地
+     * 在调用线程中执行网络请求, 不能在UI线程调用
+     * @param channel   支付渠道类型
+     * @return          同步结果, 成功时getCount为本次保存的订单数, getOrders为null
+     */
+    public BCQueryOrderResult syncRefunds(BCReqParams.BCChannelTypes channel) {
+        return sync(channel, true);
+    }
+
+    /**
+     * 在查询线程池中同步支付订单
+     * @param channel   支付渠道类型
+     * @param callback  回调入口, 结果为BCQueryOrderResult
+     */
+    public void syncBillsAsync(BCReqParams.BCChannelTypes channel, BCCallback callback) {
+        syncAsync(channel, false, callback);
+    }
+
+    /**
+     * 在查询线程池中同步退款订单
+     * @param channel   支付渠道类型
+     * @param callback  回调入口, 结果为BCQueryOrderResult
+     */
+    public void syncRefundsAsync(BCReqParams.BCChannelTypes channel, BCCallback callback) {
+        syncAsync(channel, true, callback);
+    }
+
+    private void syncAsync(final BCReqParams.BCChannelTypes channel, final boolean refund,
+                           final BCCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "请初始化callback");
+            return;
+        }
+
+        try {
+            BCCache.queryExecutorService.execute(BCFuture.wrap(callback, new Runnable() {
+                @Override
+                public void run() {
+                    callback.done(sync(channel, refund));
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            callback.done(new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), 0, null));
+        }
+    }
+
+    /**
+     * 增量同步
+     * 查询条件包含上次同步到的创建时间本身, 避免漏掉同一毫秒创建的订单, 重复的订单按主键覆盖;
+     * 全部页面保存成功后才更新同步位置, 中途失败时下次从原位置重新同步
+     */
+    private BCQueryOrderResult sync(BCReqParams.BCChannelTypes channel, boolean refund) {
+        String kind = refund ? KIND_REFUND : KIND_BILL;
+        Long lastSynced = getLastSyncedCreatedTime(kind, channel);
+
+        BCQuery query = BCQuery.getInstance();
+        BCOrderIterator iterator = refund ?
+                query.iterateRefunds(channel, null, null, lastSynced, null, SYNC_PAGE_SIZE, null) :
+                query.iterateBills(channel, null, lastSynced, null, SYNC_PAGE_SIZE, null);
+
+        long maxCreatedTime = lastSynced == null ? 0 : lastSynced;
+        int saved = 0;
+
+        List<BCBill> batch = new ArrayList<BCBill>(SYNC_PAGE_SIZE);
+        try {
+            while (iterator.hasNext()) {
+                BCBill order = iterator.next();
+                Long createdTime = createdTimeOf(order);
+                if (createdTime != null && createdTime > maxCreatedTime)
+                    maxCreatedTime = createdTime;
+
+                batch.add(order);
+                if (batch.size() == SYNC_PAGE_SIZE) {
+                    saved += save(batch, refund);
+                    batch.clear();
+                }
+            }
+            saved += save(batch, refund);
+        } finally {
+            iterator.close();
+        }
+
+        if (iterator.getErrorResult() != null)
+            return iterator.getErrorResult();
+
+        if (lastSynced == null || maxCreatedTime > lastSynced)
+            setLastSyncedCreatedTime(kind, channel, maxCreatedTime);
+
+        return new BCQueryOrderResult(0, "OK", "", saved, null);
+    }
+
+    /**
+     * 重新查询单个支付订单并更新本地记录, 比如支付完成之后
+     * 在调用线程中执行网络请求, 不能在UI线程调用
+     * @param channel   支付渠道类型
+     * @param billNum   订单号
+     * @return          查询结果
+     */
+    public BCQueryOrderResult refreshBill(BCReqParams.BCChannelTypes channel, String billNum) {
+        BCQuery.getInstance().invalidateCache(billNum);
+        BCQueryOrderResult result = BCQuery.getInstance().queryBills(channel, billNum, null, null, null, null);
+
+        if (result.getResultCode() != null && result.getResultCode() == 0 && result.getOrders() != null)
+            save(result.getOrders(), false);
+
+        return result;
+    }
+
+    /**
+     * 从本地读取支付订单, 按创建时间从新到旧排列
+     * @param channel   支付渠道类型, 比如WX包括WX_APP等所有微信渠道, 可为null表示所有渠道
+     * @param startTime 订单创建时间下限, 包含, 可为null
+     * @param endTime   订单创建时间上限, 包含, 可为null
+     * @param skip      忽略的记录个数
+     * @param limit     最多返回的记录数
+     * @return          订单列表
+     */
+    public List<BCBill> getBills(BCReqParams.BCChannelTypes channel, Long startTime, Long endTime,
+                                 int skip, int limit) {
+        return read(TABLE_BILLS, BCBill.class, channel, startTime, endTime, skip, limit);
+    }
+
+    /**
+     * 从本地读取退款订单, 按退款创建时间从新到旧排列
+     * @param channel   支付渠道类型, 可为null表示所有渠道
+     * @param startTime 退款创建时间下限, 包含, 可为null
+     * @param endTime   退款创建时间上限, 包含, 可为null
+     * @param skip      忽略的记录个数
+     * @param limit     最多返回的记录数
+     * @return          退款订单列表
+     */
+    public List<BCRefundOrder> getRefunds(BCReqParams.BCChannelTypes channel, Long startTime, Long endTime,
+                                          int skip, int limit) {
+        return read(TABLE_REFUNDS, BCRefundOrder.class, channel, startTime, endTime, skip, limit);
+    }
+
+    /**
+     * 从本地读取单个支付订单
+     * @param billNum   订单号
+     * @return          订单, 本地没有时返回null
+     */
+    public BCBill getBill(String billNum) {
+        Cursor cursor = helper.getReadableDatabase().query(TABLE_BILLS, new String[]{"json"},
+                "bill_num = ?", new String[]{billNum}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? gson.fromJson(cursor.getString(0), BCBill.class) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @param channel   支付渠道类型
+     * @return          上次同步到的支付订单创建时间, 毫秒时间戳, 没有同步过时为null
+     */
+    public Long getLastSyncedBillTime(BCReqParams.BCChannelTypes channel) {
+        return getLastSyncedCreatedTime(KIND_BILL, channel);
+    }
+
+    /**
+     * @param channel   支付渠道类型
+     * @return          上次同步到的退款订单创建时间, 毫秒时间戳, 没有同步过时为null
+     */
+    public Long getLastSyncedRefundTime(BCReqParams.BCChannelTypes channel) {
+        return getLastSyncedCreatedTime(KIND_REFUND, channel);
+    }
+
+    /**
+     * 删除所有本地订单和同步位置
+     */
+    public void clear() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_BILLS, null, null);
+            db.delete(TABLE_REFUNDS, null, null);
+            db.delete(TABLE_SYNC_STATE, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 关闭数据库
+     */
+    public void close() {
+        helper.close();
+    }
+
+    private <T extends BCBill> List<T> read(String table, Class<T> type, BCReqParams.BCChannelTypes channel,
+                                            Long startTime, Long endTime, int skip, int limit) {
+        StringBuilder selection = new StringBuilder("1 = 1");
+        List<String> args = new ArrayList<String>(4);
+
+        if (channel != null) {
+            //WX, ALI等不带下划线的类型包括其下所有的具体渠道
+            String name = channel.name();
+            if (name.indexOf('_') < 0) {
+                selection.append(" AND (channel = ? OR channel GLOB ?)");
+                args.add(name);
+                args.add(name + "_*");
+            } else {
+                selection.append(" AND channel = ?");
+                args.add(name);
+            }
+        }
+
+        if (startTime != null) {
+            selection.append(" AND created_time >= ?");
+            args.add(String.valueOf(startTime));
+        }
+
+        if (endTime != null) {
+            selection.append(" AND created_time <= ?");
+            args.add(String.valueOf(endTime));
+        }
+
+        Cursor cursor = helper.getReadableDatabase().query(table, new String[]{"json"},
+                selection.toString(), args.toArray(new String[args.size()]), null, null,
+                "created_time DESC", Math.max(0, skip) + "," + Math.max(0, limit));
+
+        List<T> orders = new ArrayList<T>(cursor.getCount());
+        try {
+            while (cursor.moveToNext())
+                orders.add(gson.fromJson(cursor.getString(0), type));
+        } finally {
+            cursor.close();
+        }
+        return orders;
+    }
+
+    /**
+     * 在一个事务中保存订单, 已有的订单会被覆盖
+     * @return  保存的订单数
+     */
+    private int save(List<? extends BCBill> orders, boolean refund) {
+        if (orders.isEmpty())
+            return 0;
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(refund ?
+                "INSERT OR REPLACE INTO " + TABLE_REFUNDS +
+                        " (refund_num, bill_num, channel, created_time, json) VALUES (?, ?, ?, ?, ?)" :
+                "INSERT OR REPLACE INTO " + TABLE_BILLS +
+                        " (bill_num, channel, created_time, json) VALUES (?, ?, ?, ?)");
+
+        int saved = 0;
+        db.beginTransaction();
+        try {
+            for (BCBill order : orders) {
+                String key = refund ? ((BCRefundOrder) order).getRefundNum() : order.getBillNum();
+                if (key == null)
+                    continue;
+
+                int index = 1;
+                statement.clearBindings();
+                statement.bindString(index++, key);
+                if (refund)
+                    bindNullable(statement, index++, order.getBillNum());
+                bindNullable(statement, index++, order.getChannel());
+
+                Long createdTime = createdTimeOf(order);
+                if (createdTime == null)
+                    statement.bindNull(index++);
+                else
+                    statement.bindLong(index++, createdTime);
+
+                statement.bindString(index, gson.toJson(order, refund ? BCRefundOrder.class : BCBill.class));
+                statement.executeInsert();
+                saved++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        return saved;
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
+    /**
+     * 退款订单的getCreatedTime不可用, 以退款创建时间为准
+     */
+    private static Long createdTimeOf(BCBill order) {
+        if (order instanceof BCRefundOrder)
+            return ((BCRefundOrder) order).getRefundCreatedTime();
+        return order.getCreatedTime();
+    }
+
+    private Long getLastSyncedCreatedTime(String kind, BCReqParams.BCChannelTypes channel) {
+        Cursor cursor = helper.getReadableDatabase().query(TABLE_SYNC_STATE,
+                new String[]{"last_created_time"}, "kind = ? AND channel = ?",
+                new String[]{kind, String.valueOf(channel)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void setLastSyncedCreatedTime(String kind, BCReqParams.BCChannelTypes channel, long createdTime) {
+        ContentValues values = new ContentValues();
+        values.put("kind", kind);
+        values.put("channel", String.valueOf(channel));
+        values.put("last_created_time", createdTime);
+        helper.getWritableDatabase().replace(TABLE_SYNC_STATE, null, values);
+    }
+
+    /**
+     * 数据库的创建和升级
+     */
+    private static class StoreOpenHelper extends SQLiteOpenHelper {
+
+        StoreOpenHelper(Context context, String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_BILLS + " (" +
+                    "bill_num TEXT PRIMARY KEY, " +
+                    "channel TEXT, " +
+                    "created_time INTEGER, " +
+                    "json TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_bills_created_time ON " + TABLE_BILLS + " (created_time)");
+            db.execSQL("CREATE INDEX idx_bills_channel ON " + TABLE_BILLS + " (channel, created_time)");
+
+            db.execSQL("CREATE TABLE " + TABLE_REFUNDS + " (" +
+                    "refund_num TEXT PRIMARY KEY, " +
+                    "bill_num TEXT, " +
+                    "channel TEXT, " +
+                    "created_time INTEGER, " +
+                    "json TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_refunds_created_time ON " + TABLE_REFUNDS + " (created_time)");
+            db.execSQL("CREATE INDEX idx_refunds_channel ON " + TABLE_REFUNDS + " (channel, created_time)");
+
+            db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+                    "kind TEXT NOT NULL, " +
+                    "channel TEXT NOT NULL, " +
+                    "last_created_time INTEGER NOT NULL, " +
+                    "PRIMARY KEY (kind, channel))");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            //本地数据可以重新同步, 升级时直接重建
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BILLS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_REFUNDS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+            onCreate(db);
+        }
+    }
+}
@@ -6,8 +6,9 @@
 */
 package cn.beecloud;
 
+import android.graphics.Bitmap;
+
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * 配置缓存类
@@ -38,14 +39,126 @@ public class BCCache {
      */
     public Integer networkTimeout;
 
+    /**
+     * 连接池最大连接数
+     */
+    public Integer connectionPoolMaxTotal;
+
+    /**
+     * 连接池中每个主机的最大连接数
+     */
+    public Integer connectionPoolMaxPerRoute;
+
+    /**
+     * 空闲连接在连接池中的保留时间
+     * 以毫秒为单位
+     */
+    public Long connectionIdleTimeout;
+
+    /**
+     * 查询请求的最大尝试次数, 包括首次请求
+     */
+    public Integer queryMaxAttempts;
+
+    /**
+     * 查询请求单次尝试的超时时间
+     * 以毫秒为单位
+     */
+    public Integer queryAttemptTimeout;
+
+    /**
+     * 是否对订单查询启用对冲请求
+     */
+    public Boolean queryHedgingEnabled;
+
+    /**
+     * 对冲请求的等待时间, 取最近查询延迟的该分位值
+     * 比如0.95表示等待时间为p95延迟
+     */
+    public Double queryHedgingPercentile;
+
+    /**
+     * 是否合并相同的进行中查询
+     */
+    public Boolean queryCoalescingEnabled;
+
+    /**
+     * 查询结果缓存的大小, 以缓存的订单条数计算, 0表示不缓存
+     */
+    public Integer queryCacheMaxOrders;
+
+    /**
+     * 订单查询结果的缓存有效期
+     * 以毫秒为单位
+     */
+    public Long queryCacheTtl;
+
+    /**
+     * 已结束的历史时间段内订单查询结果的缓存有效期
+     * 以毫秒为单位
+     */
+    public Long queryCacheClosedWindowTtl;
+
+    /**
+     * 退款状态查询结果的缓存有效期
+     * 以毫秒为单位
+     */
+    public Long refundStatusCacheTtl;
+
+    /**
+     * 生成二维码图片使用的Bitmap.Config
+     */
+    public Bitmap.Config qrCodeBitmapConfig;
+
+    /**
+     * 二维码图片缓存的大小, 以字节为单位, 0表示不缓存
+     */
+    public Long qrCodeCacheMaxBytes;
+
+    /**
+     * 支付和生成二维码请求的线程池
+     * 与查询分开, 避免大量查询时支付请求得不到执行
+     */
+    public static final BCTaskExecutor payExecutorService =
+            new BCTaskExecutor("pay", 2, 16);
+
+    /**
+     * 查询请求的线程池
+     */
+    public static final BCTaskExecutor queryExecutorService =
+            new BCTaskExecutor("query", 4, 64);
+
     /**
      * 线程池
+     * @deprecated 请使用payExecutorService或者queryExecutorService, 此处与queryExecutorService相同
      */
-    public static ExecutorService executorService = Executors.newCachedThreadPool();
+    @Deprecated
+    public static ExecutorService executorService = queryExecutorService;
 
     private BCCache() {
     }
 
+    //当前appId和appSecret对应的签名器
+    private volatile BCSigner signer;
+
+    /**
+     * 获取请求签名器, appId或者appSecret变化后自动重建
+     * @return  BCSigner实例, appId或者appSecret未设置时返回null
+     */
+    public BCSigner getSigner() {
+        String currentAppId = appId;
+        String currentAppSecret = appSecret;
+        if (currentAppId == null || currentAppSecret == null)
+            return null;
+
+        BCSigner current = signer;
+        if (current == null || !current.isSigning(currentAppId, currentAppSecret)) {
+            current = new BCSigner(currentAppId, currentAppSecret);
+            signer = current;
+        }
+        return current;
+    }
+
     /**
      * 唯一获取实例的方法
      * @return  BCCache实例
@@ -60,6 +173,26 @@ public class BCCache {
             instance.wxAppId = null;
 
             instance.networkTimeout = 10000;
+
+            instance.connectionPoolMaxTotal = 16;
+            instance.connectionPoolMaxPerRoute = 4;
+            instance.connectionIdleTimeout = 30000L;
+
+            instance.queryMaxAttempts = 3;
+            instance.queryAttemptTimeout = 4000;
+
+            instance.queryHedgingEnabled = false;
+            instance.queryHedgingPercentile = 0.95;
+
+            instance.queryCoalescingEnabled = false;
+
+            instance.queryCacheMaxOrders = 0;
+            instance.queryCacheTtl = 30000L;
+            instance.queryCacheClosedWindowTtl = 600000L;
+            instance.refundStatusCacheTtl = 5000L;
+
+            instance.qrCodeBitmapConfig = Bitmap.Config.ARGB_8888;
+            instance.qrCodeCacheMaxBytes = 0L;
         }
         return instance;
     }
@@ -0,0 +1,118 @@
+/**
+ * BCContentEncoding.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 返回内容的压缩协商和解压
+ * 请求时声明接受gzip和deflate, 收到压缩的内容时以数据流的方式边读边解压,
+ * 解析器直接读取解压后的数据, 不需要先解压到内存
+ * 供BCHttpTransport的实现使用
+ */
+public class BCContentEncoding {
+
+    /**
+     * 请求头Accept-Encoding的值
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    //解压时的读取缓冲, 查询结果通常在几KB到几十KB之间
+    private static final int BUFFER_SIZE = 4096;
+
+    private BCContentEncoding() {}
+
+    /**
+     * 请求未指定Accept-Encoding时加入
+     * @param request   请求实例
+     */
+    public static void acceptCompressed(BCHttpRequest request) {
+        for (String name : request.getHeaders().keySet()) {
+            if ("Accept-Encoding".equalsIgnoreCase(name))
+                return;
+        }
+
+        request.setHeader("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /**
+     * 根据Content-Encoding包装解压的数据流, 并去掉headers中已经不再适用的Content-Encoding和Content-Length
+     * 关闭返回的数据流时会关闭原来的数据流
+     * @param headers   返回头, 名字为小写, 会被修改
+     * @param content   原始的返回内容
+     * @return          解压后的返回内容, 没有压缩或者不支持的编码时为原来的数据流
+     * @throws IOException  gzip头读取失败
+     */
+    public static InputStream decode(Map<String, String> headers, InputStream content) throws IOException {
+        String encoding = headers.get("content-encoding");
+        if (encoding == null || content == null || "0".equals(headers.get("content-length")))
+            return content;
+
+        encoding = encoding.trim().toLowerCase(Locale.US);
+
+        InputStream decoded;
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            decoded = new GZIPInputStream(content, BUFFER_SIZE);
+        } else if ("deflate".equals(encoding)) {
+            decoded = inflate(content);
+        } else {
+            return content;
+        }
+
+        headers.remove("content-encoding");
+        headers.remove("content-length");
+        return decoded;
+    }
+
+    /**
+     * deflate按规范应为zlib格式, 但部分服务端发送不带zlib头的原始deflate数据,
+     * 根据前两个字节区分
+     */
+    private static InputStream inflate(InputStream content) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(content, BUFFER_SIZE);
+
+        in.mark(2);
+        int cmf = in.read();
+        int flg = in.read();
+        in.reset();
+
+        //zlib头: 压缩方法为8, 并且(CMF * 256 + FLG)是31的倍数
+        boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+
+        return new ReleasingInflaterInputStream(in, new Inflater(!zlib));
+    }
+
+    /**
+     * 使用自己创建的Inflater时, InflaterInputStream关闭时不会释放它的native内存
+     */
+    private static class ReleasingInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        ReleasingInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
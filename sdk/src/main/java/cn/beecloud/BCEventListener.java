@@ -0,0 +1,80 @@
+/**
+ * BCEventListener.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.IOException;
+
+/**
+ * 网络请求生命周期的通知, 通过BeeCloud.setEventListener设置
+ * 每个请求(包括重试和对冲请求)对应一个BCHttpRequest实例, 可用于关联同一请求的各个事件;
+ * 所有方法在执行请求或者读取结果的线程中同步调用, 不应执行耗时操作
+ */
+public interface BCEventListener {
+
+    /**
+     * 请求的阶段
+     */
+    enum Phase {
+        /**
+         * 域名解析, 由自己实现的BCHttpTransport报告;
+         * BCUrlConnectionTransport无法单独得到该阶段, 不报告
+         */
+        DNS,
+        /**
+         * 建立TCP连接, 只在新建连接时报告, 复用连接池中的连接时没有该阶段;
+         * BCUrlConnectionTransport只报告https的新建连接, 时间包含域名解析
+         */
+        CONNECT,
+        /**
+         * TLS握手, 复用连接时没有该阶段
+         */
+        TLS_HANDSHAKE,
+        /**
+         * 发送请求内容, 只有post请求有该阶段
+         */
+        REQUEST_WRITE,
+        /**
+         * 请求发送完成到收到返回头
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * 读取返回内容时阻塞等待的总时间, 边读边解析时不包括解析的时间
+         */
+        BODY_READ,
+        /**
+         * 解析返回的json, 不包括等待读取返回内容的时间
+         */
+        JSON_PARSE,
+        /**
+         * 执行BCCallback.done
+         */
+        CALLBACK_DISPATCH
+    }
+
+    /**
+     * 开始执行请求
+     * @param request   请求实例
+     */
+    void onRequestStart(BCHttpRequest request);
+
+    /**
+     * 一个阶段完成, 按完成的顺序通知, 传输层不支持的阶段不会通知;
+     * 边读边解析的查询结果中, JSON_PARSE在BODY_READ之前通知
+     * @param request   请求实例
+     * @param phase     完成的阶段
+     * @param nanos     该阶段的耗时, 以纳秒为单位
+     */
+    void onPhase(BCHttpRequest request, Phase phase, long nanos);
+
+    /**
+     * 请求结束, 成功时在返回内容关闭后通知, 之后还可能有CALLBACK_DISPATCH
+     * @param request       请求实例
+     * @param statusCode    http状态码, 失败时为0
+     * @param error         网络异常, 成功时为null
+     * @param totalNanos    从开始执行到结束的时间, 以纳秒为单位
+     */
+    void onRequestEnd(BCHttpRequest request, int statusCode, IOException error, long totalNanos);
+}
@@ -0,0 +1,213 @@
+/**
+ * BCEvents.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCResult;
+
+/**
+ * 向BCEventListener分发请求事件
+ * 没有设置listener时不记录任何时间, 也不包装返回内容
+ * 自己实现的BCHttpTransport可以通过reportPhase通知DNS, CONNECT等阶段
+ */
+public class BCEvents {
+
+    private static volatile BCEventListener listener;
+
+    //当前线程最近一次解析的请求, 用于关联之后的回调
+    private static final ThreadLocal<BCHttpRequest> parsedRequest = new ThreadLocal<BCHttpRequest>();
+
+    //没有listener时parseStart的返回值
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private BCEvents() {}
+
+    /**
+     * @return  当前的listener, 没有设置时为null
+     */
+    public static BCEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param eventListener     BCEventListener实例, null表示关闭
+     */
+    static void setListener(BCEventListener eventListener) {
+        listener = eventListener;
+    }
+
+    /**
+     * 通知一个阶段完成, 供BCHttpTransport的实现调用
+     * @param request   请求实例
+     * @param phase     完成的阶段
+     * @param nanos     该阶段的耗时, 以纳秒为单位
+     */
+    public static void reportPhase(BCHttpRequest request, BCEventListener.Phase phase, long nanos) {
+        BCEventListener current = listener;
+        if (current != null && request != null)
+            current.onPhase(request, phase, nanos);
+    }
+
+    static void requestStart(BCHttpRequest request) {
+        BCEventListener current = listener;
+        if (current != null) {
+            //之前解析的结果已经不会再回调
+            parsedRequest.remove();
+            current.onRequestStart(request);
+        }
+    }
+
+    /**
+     * 清除当前线程最近解析的请求, 避免之后的回调(比如命中缓存的结果)关联到无关的请求
+     */
+    static void clearParsed() {
+        if (listener != null)
+            parsedRequest.remove();
+    }
+
+    static void requestFailed(BCHttpRequest request, IOException error, long startNanos) {
+        BCEventListener current = listener;
+        if (current != null)
+            current.onRequestEnd(request, 0, error, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 包装返回内容, 记录读取的阻塞时间, 关闭时通知BODY_READ和请求结束
+     * @param request       请求实例
+     * @param statusCode    http状态码
+     * @param content       返回内容, 可为null
+     * @param startNanos    开始执行请求的时间
+     * @return              包装后的返回内容
+     */
+    static InputStream wrapContent(BCHttpRequest request, int statusCode,
+                                   InputStream content, long startNanos) {
+        BCEventListener current = listener;
+        if (current == null)
+            return content;
+
+        if (content == null) {
+            current.onRequestEnd(request, statusCode, null, System.nanoTime() - startNanos);
+            return null;
+        }
+
+        return new TimedInputStream(content, current, request, statusCode, startNanos);
+    }
+
+    /**
+     * 开始解析返回内容
+     * @param response  返回结果
+     * @return          用于parseEnd的开始时间
+     */
+    static long parseStart(BCHttpResponse response) {
+        if (listener == null)
+            return NOT_TIMED;
+        //减去已经读取的时间, 使parseEnd只扣除解析期间的读取时间
+        return System.nanoTime() - readNanosOf(response);
+    }
+
+    /**
+     * 解析完成, 通知JSON_PARSE, 并将请求与当前线程之后的回调关联
+     * @param response  返回结果
+     * @param start     parseStart的返回值
+     */
+    static void parseEnd(BCHttpResponse response, long start) {
+        BCEventListener current = listener;
+        if (current == null || start == NOT_TIMED || response.getRequest() == null)
+            return;
+
+        current.onPhase(response.getRequest(), BCEventListener.Phase.JSON_PARSE,
+                System.nanoTime() - start - readNanosOf(response));
+        parsedRequest.set(response.getRequest());
+    }
+
+    /**
+     * 执行回调, 通知当前线程最近解析的请求的CALLBACK_DISPATCH
+     * @param callback  回调入口
+     * @param result    回调的结果
+     */
+    static void dispatch(BCCallback callback, BCResult result) {
+        BCEventListener current = listener;
+        BCHttpRequest request = parsedRequest.get();
+        if (current == null || request == null) {
+            callback.done(result);
+            return;
+        }
+
+        parsedRequest.remove();
+        long start = System.nanoTime();
+        try {
+            callback.done(result);
+        } finally {
+            current.onPhase(request, BCEventListener.Phase.CALLBACK_DISPATCH, System.nanoTime() - start);
+        }
+    }
+
+    private static long readNanosOf(BCHttpResponse response) {
+        InputStream content = response.getContent();
+        return content instanceof TimedInputStream ? ((TimedInputStream) content).readNanos : 0;
+    }
+
+    /**
+     * 累计读取时的阻塞时间
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        private final BCEventListener listener;
+        private final BCHttpRequest request;
+        private final int statusCode;
+        private final long startNanos;
+
+        //只在读取的线程中访问
+        long readNanos;
+        private boolean closed;
+
+        TimedInputStream(InputStream in, BCEventListener listener, BCHttpRequest request,
+                         int statusCode, long startNanos) {
+            super(in);
+            this.listener = listener;
+            this.request = request;
+            this.statusCode = statusCode;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+
+            try {
+                super.close();
+            } finally {
+                listener.onPhase(request, BCEventListener.Phase.BODY_READ, readNanos);
+                listener.onRequestEnd(request, statusCode, null, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * BCHedgedRequest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.async.BCFuture;
+
+/**
+ * 对冲请求
+ * 首个主机在一定延迟内没有返回时, 向另一个主机发送相同的请求,
+ * 采用先成功返回的结果并取消另一个请求
+ * 只能用于幂等的查询请求
+ */
+public class BCHedgedRequest {
+
+    //延迟样本不足时使用的对冲等待时间, 以毫秒为单位
+    private static final long DEFAULT_HEDGE_DELAY = 500;
+
+    //对冲等待时间下限, 以毫秒为单位
+    private static final long MIN_HEDGE_DELAY = 20;
+
+    //计算分位数所需的最少样本数
+    private static final int MIN_SAMPLES = 20;
+
+    //最近成功查询的延迟, 以纳秒为单位, 循环写入
+    private static final long[] latencies = new long[128];
+    private static int latencyCount;
+    private static int latencyIndex;
+
+    //用于在等待时间到达后发起对冲请求
+    private static final ScheduledExecutorService hedgeTimer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BeeCloud-hedge-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final String primaryHost;
+    private final String path;
+
+    private long deadline;
+
+    private BCHttpRequest primary;
+    private BCHttpRequest hedge;
+    private boolean primaryDone;
+    private boolean hedgeDone;
+
+    //不再允许发起对冲请求
+    private boolean closed;
+
+    //先成功返回的结果
+    private BCHttpResponse winner;
+
+    //5xx的结果, 所有请求都没有成功时返回
+    private BCHttpResponse fallback;
+
+    /**
+     * 构造函数
+     * @param primaryHost   首个请求的主机
+     * @param path          不包含主机的请求路径
+     */
+    BCHedgedRequest(String primaryHost, String path) {
+        this.primaryHost = primaryHost;
+        this.path = path;
+    }
+
+    /**
+     * 记录一次成功查询的延迟
+     * @param latencyNanos  延迟, 以纳秒为单位
+     */
+    static void recordLatency(long latencyNanos) {
+        synchronized (latencies) {
+            latencies[latencyIndex] = latencyNanos;
+            latencyIndex = (latencyIndex + 1) % latencies.length;
+            if (latencyCount < latencies.length)
+                latencyCount++;
+        }
+    }
+
+    /**
+     * 根据最近的查询延迟计算对冲等待时间
+     * @param percentile    分位, 比如0.95
+     * @return              等待时间, 以毫秒为单位
+     */
+    static long hedgeDelayMillis(double percentile) {
+        long[] sorted;
+        synchronized (latencies) {
+            if (latencyCount < MIN_SAMPLES)
+                return DEFAULT_HEDGE_DELAY;
+
+            sorted = Arrays.copyOf(latencies, latencyCount);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        index = Math.max(0, Math.min(sorted.length - 1, index));
+
+        return Math.max(MIN_HEDGE_DELAY, TimeUnit.NANOSECONDS.toMillis(sorted[index]));
+    }
+
+    /**
+     * 发起请求并等待结果
+     * @return  BCHttpResponse请求结果实例, 都失败时为5xx的结果或者null
+     */
+    BCHttpResponse execute() {
+        BCCache cache = BCCache.getInstance();
+        int timeout = cache.networkTimeout;
+
+        BCHttpRequest primaryGet = BCHttpClientUtil.newGet(primaryHost + path, timeout);
+        synchronized (this) {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            primary = primaryGet;
+        }
+
+        ScheduledFuture<?> timer = null;
+        try {
+            timer = hedgeTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    startHedge();
+                }
+            }, hedgeDelayMillis(cache.queryHedgingPercentile), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+        }
+
+        try {
+            onResponse(primaryGet, BCHttpClientUtil.executeGet(primaryGet));
+        } catch (IOException e) {
+            onFailure(primaryGet);
+        }
+
+        if (timer != null)
+            timer.cancel(false);
+
+        //通过BCFuture取消时, 同时中止对冲请求
+        BCFuture<?> future = BCFuture.current();
+        if (future != null) {
+            future.setCancelAction(new Runnable() {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        }
+
+        BCHttpResponse result = awaitResult();
+        if (result != null)
+            return result;
+
+        boolean hedged;
+        synchronized (this) {
+            hedged = hedge != null;
+        }
+        if (hedged || BCHttpClientUtil.isCancelled())
+            return takeFallback();
+
+        //首个请求在对冲之前已经失败, 直接换一个主机重试
+        String otherHost = BCHttpClientUtil.getHostSelector()
+                .selectHost(Collections.singletonList(primaryHost));
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (otherHost == null || remaining <= MIN_HEDGE_DELAY)
+            return takeFallback();
+
+        BCMetrics.recordRetry(BCMetrics.endpointOf(path), primaryHost);
+
+        try {
+            BCHttpResponse response = BCHttpClientUtil.executeGet(
+                    BCHttpClientUtil.newGet(otherHost + path, (int) remaining));
+            if (response.getStatusCode() < 500) {
+                BCHttpClientUtil.releaseResponse(takeFallback());
+                return response;
+            }
+            BCHttpClientUtil.releaseResponse(response);
+        } catch (IOException ignored) {
+        }
+
+        return takeFallback();
+    }
+
+    /**
+     * 到达等待时间后向另一个主机发起相同的请求
+     */
+    private void startHedge() {
+        final BCHttpRequest hedgeGet;
+        synchronized (this) {
+            if (closed || winner != null || hedge != null)
+                return;
+
+            String hedgeHost = BCHttpClientUtil.getHostSelector()
+                    .selectHost(Collections.singletonList(primaryHost));
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (hedgeHost == null || remaining <= MIN_HEDGE_DELAY)
+                return;
+
+            hedgeGet = BCHttpClientUtil.newGet(hedgeHost + path, (int) remaining);
+            hedge = hedgeGet;
+        }
+
+        BCMetrics.recordRetry(BCMetrics.endpointOf(path), primaryHost);
+
+        //查询线程池已经饱和时不再发起对冲, 避免进一步增加负载
+        BCTaskExecutor executor = BCCache.queryExecutorService;
+        if (executor.isSaturated()) {
+            onFailure(hedgeGet);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        onResponse(hedgeGet, BCHttpClientUtil.executeGet(hedgeGet));
+                    } catch (IOException e) {
+                        onFailure(hedgeGet);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            onFailure(hedgeGet);
+        }
+    }
+
+    /**
+     * 处理请求返回的结果, 第一个成功的结果胜出并取消另一个请求
+     */
+    private void onResponse(BCHttpRequest request, BCHttpResponse response) {
+        BCHttpRequest loser = null;
+        BCHttpResponse unused = null;
+
+        synchronized (this) {
+            markDone(request);
+
+            if (closed) {
+                //已经放弃等待, 结果不再使用
+                unused = response;
+            } else if (winner == null && response.getStatusCode() < 500) {
+                winner = response;
+                loser = (request == primary) ? pendingRequest(hedge, hedgeDone) :
+                        pendingRequest(primary, primaryDone);
+            } else if (winner == null && fallback == null) {
+                fallback = response;
+            } else {
+                unused = response;
+            }
+
+            notifyAll();
+        }
+
+        if (loser != null)
+            loser.abort();
+
+        BCHttpClientUtil.releaseResponse(unused);
+    }
+
+    private synchronized void onFailure(BCHttpRequest request) {
+        markDone(request);
+        notifyAll();
+    }
+
+    private void markDone(BCHttpRequest request) {
+        if (request == primary)
+            primaryDone = true;
+        else
+            hedgeDone = true;
+    }
+
+    private static BCHttpRequest pendingRequest(BCHttpRequest request, boolean done) {
+        return (request == null || done) ? null : request;
+    }
+
+    /**
+     * 等待胜出的结果, 或者所有已发起的请求结束
+     * @return  胜出的结果, 没有则为null
+     */
+    private BCHttpResponse awaitResult() {
+        BCHttpRequest timedOut = null;
+        BCHttpResponse result;
+
+        synchronized (this) {
+            while (!closed && winner == null && (!primaryDone || (hedge != null && !hedgeDone))) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0)
+                    break;
+
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            closed = true;
+            result = winner;
+
+            if (result == null)
+                timedOut = pendingRequest(hedge, hedgeDone);
+        }
+
+        if (timedOut != null)
+            timedOut.abort();
+
+        if (result != null)
+            BCHttpClientUtil.releaseResponse(takeFallback());
+
+        return result;
+    }
+
+    /**
+     * 放弃等待, 中止尚未结束的对冲请求
+     */
+    private void close() {
+        BCHttpRequest pending;
+        synchronized (this) {
+            closed = true;
+            pending = pendingRequest(hedge, hedgeDone);
+            notifyAll();
+        }
+
+        if (pending != null)
+            pending.abort();
+    }
+
+    private synchronized BCHttpResponse takeFallback() {
+        BCHttpResponse response = fallback;
+        fallback = null;
+        return response;
+    }
+}
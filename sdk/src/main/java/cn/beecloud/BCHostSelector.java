@@ -0,0 +1,303 @@
+/**
+ * BCHostSelector.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * 主机选择类
+ * 记录每个主机的延迟EWMA(指数加权移动平均)和错误率, 优先选择最快的健康主机,
+ * 在健康主机之间通过power of two choices做负载均衡;
+ * 连续失败或者错误率过高的主机会被暂时剔除, 剔除到期后放行一个请求重新试探
+ */
+public class BCHostSelector {
+
+    //EWMA平滑系数, 越大越偏向最近的结果
+    private static final double EWMA_ALPHA = 0.3;
+
+    //没有延迟数据时的初始估计, 以纳秒为单位
+    private static final long INITIAL_LATENCY_NANOS = 200L * 1000 * 1000;
+
+    //连续失败达到该次数则剔除
+    private static final int EJECT_CONSECUTIVE_FAILURES = 3;
+
+    //错误率超过该值则剔除
+    private static final double EJECT_ERROR_RATE = 0.5;
+
+    //错误率判断所需的最少样本数
+    private static final int EJECT_MIN_SAMPLES = 5;
+
+    //首次剔除时长, 以纳秒为单位, 再次剔除时指数增长
+    private static final long BASE_EJECT_NANOS = 10L * 1000 * 1000 * 1000;
+
+    //最长剔除时长, 以纳秒为单位
+    private static final long MAX_EJECT_NANOS = 5L * 60 * 1000 * 1000 * 1000;
+
+    //试探请求没有结果时, 超过该时长允许再次试探, 以纳秒为单位
+    private static final long PROBE_TIMEOUT_NANOS = 60L * 1000 * 1000 * 1000;
+
+    private final HostStats[] hostStats;
+
+    private final Random random = new Random();
+
+    /**
+     * 构造函数
+     * @param hosts     可选的主机地址, 比如https://apibj.beecloud.cn
+     */
+    public BCHostSelector(String[] hosts) {
+        if (hosts == null || hosts.length == 0)
+            throw new IllegalArgumentException("hosts不能为空");
+
+        hostStats = new HostStats[hosts.length];
+        for (int i = 0; i < hosts.length; i++)
+            hostStats[i] = new HostStats(hosts[i]);
+    }
+
+    /**
+     * @return  所有可选的主机地址
+     */
+    public String[] getHosts() {
+        String[] hosts = new String[hostStats.length];
+        for (int i = 0; i < hostStats.length; i++)
+            hosts[i] = hostStats[i].host;
+        return hosts;
+    }
+
+    /**
+     * 选择当前最优的主机
+     * @return  主机地址
+     */
+    public String selectHost() {
+        return selectHost(null);
+    }
+
+    /**
+     * 选择当前最优的主机
+     * @param excluded  不参与选择的主机, 比如已经失败过的主机, 可为null
+     * @return          主机地址, 如果所有主机都被排除则返回null
+     */
+    public String selectHost(Collection<String> excluded) {
+        return selectHost(excluded, System.nanoTime());
+    }
+
+    /**
+     * 以指定的时间选择主机, 用于测试剔除到期
+     * @param excluded  不参与选择的主机, 可为null
+     * @param now       当前时间, System.nanoTime
+     * @return          主机地址, 如果所有主机都被排除则返回null
+     */
+    String selectHost(Collection<String> excluded, long now) {
+        HostStats[] candidates = new HostStats[hostStats.length];
+        int count = 0;
+        HostStats leastEjected = null;
+
+        for (HostStats stats : hostStats) {
+            if (excluded != null && excluded.contains(stats.host))
+                continue;
+
+            //剔除到期的主机优先放行一个试探请求
+            if (stats.tryStartProbe(now))
+                return stats.host;
+
+            if (stats.isHealthy()) {
+                candidates[count++] = stats;
+            } else if (leastEjected == null || stats.ejectedUntil() < leastEjected.ejectedUntil()) {
+                leastEjected = stats;
+            }
+        }
+
+        if (count == 0)
+            return leastEjected == null ? null : leastEjected.host;
+
+        if (count == 1)
+            return candidates[0].host;
+
+        //power of two choices: 随机选两个, 取得分较低者
+        int first;
+        int second;
+        synchronized (random) {
+            first = random.nextInt(count);
+            second = random.nextInt(count - 1);
+        }
+        if (second >= first)
+            second++;
+
+        return candidates[first].score() <= candidates[second].score() ?
+                candidates[first].host : candidates[second].host;
+    }
+
+    /**
+     * 记录一次成功的请求
+     * @param host          请求的主机, 为null时忽略
+     * @param latencyNanos  请求延迟, 以纳秒为单位
+     */
+    public void reportSuccess(String host, long latencyNanos) {
+        HostStats stats = find(host);
+        if (stats != null)
+            stats.onSuccess(latencyNanos);
+    }
+
+    /**
+     * 记录一次失败的请求, 比如网络异常或者服务端5xx错误
+     * @param host  请求的主机, 为null时忽略
+     */
+    public void reportFailure(String host) {
+        reportFailure(host, System.nanoTime());
+    }
+
+    /**
+     * 以指定的时间记录一次失败的请求, 用于测试剔除到期
+     * @param host  请求的主机, 为null时忽略
+     * @param now   当前时间, System.nanoTime
+     */
+    void reportFailure(String host, long now) {
+        HostStats stats = find(host);
+        if (stats != null)
+            stats.onFailure(now);
+    }
+
+    /**
+     * 查找url所属的主机
+     * @param url   完整的请求url
+     * @return      主机地址, 不属于任何可选主机时返回null
+     */
+    public String hostOf(String url) {
+        if (url == null)
+            return null;
+
+        for (HostStats stats : hostStats) {
+            if (url.startsWith(stats.host))
+                return stats.host;
+        }
+        return null;
+    }
+
+    /**
+     * @param host  主机地址
+     * @return      当前的延迟EWMA, 以纳秒为单位, 主机不存在时返回-1
+     */
+    public long getLatencyEstimate(String host) {
+        HostStats stats = find(host);
+        return stats == null ? -1 : stats.latencyEstimate();
+    }
+
+    /**
+     * @param host  主机地址
+     * @return      true表示该主机当前被剔除
+     */
+    public boolean isEjected(String host) {
+        HostStats stats = find(host);
+        return stats != null && !stats.isHealthy();
+    }
+
+    private HostStats find(String host) {
+        if (host == null)
+            return null;
+
+        for (HostStats stats : hostStats) {
+            if (stats.host.equals(host))
+                return stats;
+        }
+        return null;
+    }
+
+    /**
+     * 单个主机的统计信息
+     */
+    private static class HostStats {
+        final String host;
+
+        private double ewmaLatencyNanos = INITIAL_LATENCY_NANOS;
+        private double errorRate;
+        private int samples;
+        private int consecutiveFailures;
+
+        //被剔除的次数, 决定下一次剔除时长
+        private int ejections;
+        private long ejectedUntilNanos;
+        private boolean ejected;
+        private boolean probing;
+        private long probeStartedNanos;
+
+        HostStats(String host) {
+            this.host = host;
+        }
+
+        synchronized boolean isHealthy() {
+            return !ejected;
+        }
+
+        synchronized long ejectedUntil() {
+            return ejectedUntilNanos;
+        }
+
+        synchronized long latencyEstimate() {
+            return (long) ewmaLatencyNanos;
+        }
+
+        synchronized double score() {
+            return ewmaLatencyNanos * (1 + 4 * errorRate);
+        }
+
+        /**
+         * 剔除到期且没有试探请求时, 标记为试探中
+         * @return  true表示本次请求作为试探请求
+         */
+        synchronized boolean tryStartProbe(long now) {
+            if (ejected && now - ejectedUntilNanos >= 0 &&
+                    (!probing || now - probeStartedNanos > PROBE_TIMEOUT_NANOS)) {
+                probing = true;
+                probeStartedNanos = now;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSuccess(long latencyNanos) {
+            ewmaLatencyNanos = EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * ewmaLatencyNanos;
+            errorRate = (1 - EWMA_ALPHA) * errorRate;
+            samples++;
+            consecutiveFailures = 0;
+
+            //试探成功, 恢复为健康主机
+            if (ejected) {
+                ejected = false;
+                probing = false;
+                ejections = 0;
+                errorRate = 0;
+            }
+        }
+
+        synchronized void onFailure(long now) {
+            errorRate = EWMA_ALPHA + (1 - EWMA_ALPHA) * errorRate;
+            samples++;
+            consecutiveFailures++;
+
+            if (ejected) {
+                //试探失败, 延长剔除时间
+                if (probing)
+                    eject(now);
+                return;
+            }
+
+            if (consecutiveFailures >= EJECT_CONSECUTIVE_FAILURES ||
+                    (samples >= EJECT_MIN_SAMPLES && errorRate > EJECT_ERROR_RATE))
+                eject(now);
+        }
+
+        private void eject(long now) {
+            long duration = BASE_EJECT_NANOS << Math.min(ejections, 16);
+            if (duration <= 0 || duration > MAX_EJECT_NANOS)
+                duration = MAX_EJECT_NANOS;
+
+            ejections++;
+            ejected = true;
+            probing = false;
+            ejectedUntilNanos = now + duration;
+        }
+    }
+}
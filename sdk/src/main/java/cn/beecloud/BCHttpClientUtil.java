@@ -6,37 +6,32 @@
  */
 package cn.beecloud;
 
-import com.google.gson.Gson;
+import android.util.Log;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.protocol.HTTP;
+import org.apache.http.message.BasicHttpResponse;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.security.KeyStore;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.entity.BCJsonCodec;
 
 /**
  * 网络请求工具类
  */
 public class BCHttpClientUtil {
+    private static final String TAG = "BCHttpClientUtil";
 
     //主机地址
     private static final String[] BEECLOUD_HOSTS = {"https://apibj.beecloud.cn",
@@ -63,136 +58,526 @@ public class BCHttpClientUtil {
     //退款订单查询部分URL
     private static final String REFUND_STATUS_QUERY_URL = "rest/refund/status?para=";
 
+    //重试时单次请求的最短超时时间, 以毫秒为单位
+    private static final long MIN_ATTEMPT_TIMEOUT = 200;
+
+    //根据延迟和错误率选择主机
+    private static volatile BCHostSelector hostSelector = new BCHostSelector(BEECLOUD_HOSTS);
+
+    //幂等查询的重试策略
+    private static final BCRetryPolicy queryRetryPolicy = new BCRetryPolicy(100, 1000);
+
+    /**
+     * 选择当前最优的主机, 并加入API版本号
+     */
+    private static String getPreferredHost() {
+        return hostSelector.selectHost() + HOST_API_VERSION;
+    }
+
     /**
-     * 随机获取主机, 并加入API版本号
+     * @return  主机选择器
      */
-    private static String getRandomHost() {
-        Random r = new Random();
-        return BEECLOUD_HOSTS[r.nextInt(BEECLOUD_HOSTS.length)] + HOST_API_VERSION;
+    static BCHostSelector getHostSelector() {
+        return hostSelector;
+    }
+
+    /**
+     * @return  幂等查询的重试策略
+     */
+    static BCRetryPolicy getQueryRetryPolicy() {
+        return queryRetryPolicy;
+    }
+
+    /**
+     * 替换请求的主机, 用于测试环境, 比如本地的mock server
+     * 已经统计的延迟和错误率会被清空
+     * @param hosts     主机地址, 比如http://127.0.0.1:8080, 为null或者空时恢复为BeeCloud的主机
+     */
+    static void setHosts(String[] hosts) {
+        if (hosts == null || hosts.length == 0)
+            hosts = BEECLOUD_HOSTS;
+
+        String[] normalized = new String[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            String host = hosts[i];
+            normalized[i] = host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
+        }
+
+        hostSelector = new BCHostSelector(normalized);
     }
 
     /**
      * @return  支付请求URL
      */
     public static String getBillPayURL() {
-        return getRandomHost() + BILL_PAY_URL;
+        return getPreferredHost() + BILL_PAY_URL;
     }
 
     /**
      * @return  获取扫码信息URL
      */
     public static String getQRCodeReqURL() {
-        return getRandomHost() + QRCODE_REQ_URL;
+        return getPreferredHost() + QRCODE_REQ_URL;
     }
 
     /**
      * @return  查询支付订单URL
      */
     public static String getBillQueryURL() {
-        return getRandomHost() + BILL_QUERY_URL;
+        return getPreferredHost() + BILL_QUERY_URL;
     }
 
     /**
      * @return  查询退款订单URL
      */
     public static String getRefundQueryURL() {
-        return getRandomHost() + REFUND_QUERY_URL;
+        return getPreferredHost() + REFUND_QUERY_URL;
     }
 
     /**
      * @return  查询退款订单状态URL
      */
     public static String getRefundStatusURL() {
-        return getRandomHost() + REFUND_STATUS_QUERY_URL;
+        return getPreferredHost() + REFUND_STATUS_QUERY_URL;
+    }
+
+    //当前的网络传输层, 首次请求时创建默认实现
+    private static BCHttpTransport transport;
+
+    //getTransport不是BCApacheHttpTransport时, wrapClient使用的实例
+    private static BCApacheHttpTransport legacyTransport;
+
+    /**
+     * 获取当前的网络传输层, 未设置时使用BCUrlConnectionTransport
+     * @return  BCHttpTransport实例
+     */
+    public static synchronized BCHttpTransport getTransport() {
+        if (transport == null)
+            transport = new BCUrlConnectionTransport();
+        return transport;
     }
 
     /**
+     * 替换网络传输层, 之前的传输层会被关闭
+     * @param httpTransport     BCHttpTransport实例, 为null时恢复为默认实现
+     */
+    static void setTransport(BCHttpTransport httpTransport) {
+        BCHttpTransport old;
+        synchronized (BCHttpClientUtil.class) {
+            old = transport;
+            transport = httpTransport;
+        }
+
+        if (old != null && old != httpTransport)
+            old.shutdown();
+    }
+
+    /**
+     * 连接池设置修改后调用, 当前使用BCUrlConnectionTransport时映射到系统属性
+     * BCApacheHttpTransport在重新创建连接池时直接读取BCCache中的设置
+     * @param maxIdlePerHost    每个主机保留的空闲连接数, 不大于0时不修改
+     * @param idleTimeout       空闲连接的保留时间, 单位为毫秒, 不大于0时不修改
+     */
+    static void applyPoolSettings(int maxIdlePerHost, long idleTimeout) {
+        if (getTransport() instanceof BCUrlConnectionTransport)
+            BCUrlConnectionTransport.applyPoolSettings(maxIdlePerHost, idleTimeout);
+    }
+
+    /**
+     * 获取Apache HttpClient实例
      * @return  HttpClient实例
+     * @deprecated SDK的请求已改为通过BCHttpTransport发送, 只有使用BCApacheHttpTransport时返回的才是SDK使用的实例
      */
-    public static HttpClient wrapClient() {
-        try {
-            KeyStore trustStore = KeyStore.getInstance(KeyStore
-                    .getDefaultType());
-            trustStore.load(null, null);
-            SSLSocketFactory sf = new BCSSLSocketFactory(trustStore);
-            sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+    @Deprecated
+    public static synchronized HttpClient wrapClient() {
+        if (transport instanceof BCApacheHttpTransport)
+            return ((BCApacheHttpTransport) transport).getClient();
+
+        if (legacyTransport == null)
+            legacyTransport = new BCApacheHttpTransport();
+        return legacyTransport.getClient();
+    }
 
-            HttpParams params = new BasicHttpParams();
+    /**
+     * 关闭网络传输层的连接池并释放所有连接
+     * 之后的请求会重新建立连接
+     */
+    public static void shutdown() {
+        BCHttpTransport current;
+        BCApacheHttpTransport legacy;
+        synchronized (BCHttpClientUtil.class) {
+            current = transport;
+            legacy = legacyTransport;
+        }
 
-            HttpConnectionParams.setConnectionTimeout(params, BCCache.getInstance().networkTimeout);
-            HttpConnectionParams.setSoTimeout(params, BCCache.getInstance().networkTimeout);
+        if (current != null)
+            current.shutdown();
+        if (legacy != null)
+            legacy.shutdown();
+    }
 
-            HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-            HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+    /**
+     * 释放未读取的response, 使连接回到连接池
+     * 对于不需要读取内容的response(比如非200返回)必须调用
+     * @param response  BCHttpResponse实例, 可为null
+     */
+    public static void releaseResponse(BCHttpResponse response) {
+        if (response != null)
+            response.close();
+    }
 
-            SchemeRegistry registry = new SchemeRegistry();
-            registry.register(new Scheme("http", PlainSocketFactory
-                    .getSocketFactory(), 80));
-            registry.register(new Scheme("https", sf, 443));
+    /**
+     * 执行请求, 并将结果反馈给主机选择器
+     * 网络异常和服务端5xx错误计为失败
+     * @param request   请求实例
+     * @return          BCHttpResponse请求结果实例
+     * @throws IOException  网络异常
+     */
+    private static BCHttpResponse execute(final BCHttpRequest request) throws IOException {
+        return execute(request, BCMetrics.endpointOf(request.getUrl()));
+    }
 
-            ClientConnectionManager ccm = new ThreadSafeClientConnManager(
-                    params, registry);
+    /**
+     * 执行请求, 并将结果反馈给主机选择器和BCMetrics
+     * @param request   请求实例
+     * @param endpoint  请求的接口
+     * @return          BCHttpResponse请求结果实例
+     * @throws IOException  网络异常
+     */
+    private static BCHttpResponse execute(final BCHttpRequest request,
+                                          BCMetrics.Endpoint endpoint) throws IOException {
+        //通过BCFuture发起的请求, 取消时中止当前请求
+        BCFuture<?> future = BCFuture.current();
+        if (future != null) {
+            future.setCancelAction(new Runnable() {
+                @Override
+                public void run() {
+                    request.abort();
+                }
+            });
+        }
+
+        BCHostSelector selector = hostSelector;
+        String host = selector.hostOf(request.getUrl());
+        long start = System.nanoTime();
+
+        long bytesOut = request.getBody() == null ? 0 : request.getBody().getContentLength();
 
-            return new DefaultHttpClient(ccm, params);
-        } catch (Exception e) {
-            return new DefaultHttpClient();
+        BCEvents.requestStart(request);
+
+        BCHttpResponse response;
+        Map<String, String> headers;
+        InputStream content;
+        try {
+            response = getTransport().execute(request);
+
+            //按网络上传输的字节数统计, 之后再解压
+            headers = new HashMap<String, String>(response.getHeaders());
+            content = BCMetrics.countBytesIn(endpoint, host, response.getContent());
+            try {
+                content = BCContentEncoding.decode(headers, content);
+            } catch (IOException e) {
+                response.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            BCEvents.requestFailed(request, e, start);
+            //被主动取消的请求(比如对冲请求中落后的一方)不计为失败
+            if (!request.isAborted())
+                selector.reportFailure(host);
+            BCMetrics.recordRequest(endpoint, host, 0, BCMetrics.failureOf(e, request),
+                    System.nanoTime() - start, bytesOut);
+            throw e;
         }
+
+        long latency = System.nanoTime() - start;
+        int statusCode = response.getStatusCode();
+
+        if (statusCode >= 500)
+            selector.reportFailure(host);
+        else
+            selector.reportSuccess(host, latency);
+
+        BCMetrics.Failure failure = null;
+        if (statusCode >= 500)
+            failure = BCMetrics.Failure.SERVER_ERROR;
+        else if (statusCode >= 400)
+            failure = BCMetrics.Failure.CLIENT_ERROR;
+        BCMetrics.recordRequest(endpoint, host, statusCode, failure, latency, bytesOut);
+
+        content = BCEvents.wrapContent(request, statusCode, content, start);
+
+        BCHttpResponse result = new BCHttpResponse(statusCode, headers, content);
+        result.setRequest(request);
+        return result;
     }
 
     /**
      * http get 请求
      * @param url   请求uri
      * @return      HttpResponse请求结果实例
+     * @deprecated 请使用sendGet, 本方法把BCHttpResponse转换为HttpResponse, 读取完内容后请关闭
      */
+    @Deprecated
     public static HttpResponse httpGet(String url) {
-        HttpClient client = wrapClient();
+        return toHttpResponse(sendGet(url));
+    }
 
-        HttpGet httpGet = new HttpGet(url);
-        HttpResponse response = null;
+    /**
+     * 通过BCHttpTransport发送http get 请求
+     * @param url   请求uri
+     * @return      BCHttpResponse请求结果实例
+     */
+    public static BCHttpResponse sendGet(String url) {
+        BCHttpResponse response = null;
         try {
-            response = client.execute(httpGet);
+            response = doGet(url, BCCache.getInstance().networkTimeout);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.w(TAG, "get failed: " + e.getMessage());
         }
         return response;
     }
 
     /**
-     * http post 请求
+     * http get 请求
+     * @param url       请求uri
+     * @param timeout   本次请求的超时时间, 以毫秒为单位
+     * @return          BCHttpResponse请求结果实例
+     * @throws IOException  网络异常
+     */
+    private static BCHttpResponse doGet(String url, int timeout) throws IOException {
+        return executeGet(newGet(url, timeout));
+    }
+
+    /**
+     * 创建get请求
+     * @param url       请求uri
+     * @param timeout   本次请求的超时时间, 以毫秒为单位
+     * @return          BCHttpRequest实例
+     */
+    static BCHttpRequest newGet(String url, int timeout) {
+        BCHttpRequest httpGet = new BCHttpRequest(BCHttpRequest.METHOD_GET, url);
+        httpGet.setTimeout(timeout);
+        return httpGet;
+    }
+
+    /**
+     * 执行get请求, 成功的请求延迟会用于计算对冲请求的等待时间
+     * @param httpGet   请求实例, 可以通过abort取消
+     * @return          BCHttpResponse请求结果实例
+     * @throws IOException  网络异常, 请求被取消时也会抛出
+     */
+    static BCHttpResponse executeGet(BCHttpRequest httpGet) throws IOException {
+        long start = System.nanoTime();
+        BCHttpResponse response = execute(httpGet);
+        if (response.getStatusCode() < 500)
+            BCHedgedRequest.recordLatency(System.nanoTime() - start);
+
+        return response;
+    }
+
+    /**
+     * 用于幂等查询的http get 请求
+     * 网络异常或者服务端5xx错误时, 以带随机抖动的指数退避换到其他主机重试,
+     * 每次请求的超时时间不超过queryAttemptTimeout, 所有请求在networkTimeout内结束
+     * @param url   请求uri, 需以getBillQueryURL等方法生成
+     * @return      BCHttpResponse请求结果实例, 所有请求都失败时为最后一次的结果或者null
+     */
+    public static BCHttpResponse httpGetWithFailover(String url) {
+        BCHostSelector selector = hostSelector;
+        String host = selector.hostOf(url);
+        if (host == null)
+            return sendGet(url);
+
+        //去掉主机部分, 重试时拼接其他主机
+        String path = url.substring(host.length());
+
+        BCCache cache = BCCache.getInstance();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cache.networkTimeout);
+        int maxAttempts = cache.queryMaxAttempts;
+
+        queryRetryPolicy.onRequest();
+
+        List<String> triedHosts = new ArrayList<String>(maxAttempts);
+
+        for (int attempt = 1; ; attempt++) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            int timeout = (int) Math.min(remaining, cache.queryAttemptTimeout);
+
+            triedHosts.add(host);
+
+            BCHttpResponse response = null;
+            try {
+                response = doGet(host + path, timeout);
+                if (response.getStatusCode() < 500)
+                    return response;
+            } catch (IOException e) {
+                Log.w(TAG, "query failed on " + host + ": " + e.getMessage());
+            }
+
+            if (attempt >= maxAttempts || isCancelled())
+                return response;
+
+            //剩余时间不足以完成一次重试
+            long backoff = queryRetryPolicy.backoffMillis(attempt);
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining - backoff < MIN_ATTEMPT_TIMEOUT)
+                return response;
+
+            if (!queryRetryPolicy.tryAcquireRetry())
+                return response;
+
+            BCMetrics.recordRetry(BCMetrics.endpointOf(path), host);
+
+            releaseResponse(response);
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            //优先选择尚未请求过的主机
+            host = selector.selectHost(triedHosts);
+            if (host == null)
+                host = selector.selectHost();
+        }
+    }
+
+    /**
+     * 用于幂等查询的对冲http get 请求
+     * 首个主机在queryHedgingPercentile分位的延迟内没有返回时, 向另一个主机发送相同请求,
+     * 采用先返回的结果并取消另一个请求
+     * @param url   请求uri, 需以getBillQueryURL等方法生成
+     * @return      BCHttpResponse请求结果实例, 都失败时为null
+     */
+    public static BCHttpResponse httpGetHedged(String url) {
+        String host = hostSelector.hostOf(url);
+        if (host == null)
+            return sendGet(url);
+
+        return new BCHedgedRequest(host, url.substring(host.length())).execute();
+    }
+
+    /**
+     * @return  true表示当前线程的任务已经通过BCFuture取消
+     */
+    static boolean isCancelled() {
+        BCFuture<?> future = BCFuture.current();
+        return future != null && future.isCancelled();
+    }
+
+    /**
+     * 通过BCHttpTransport发送http post 请求
      * @param url       请求url
-     * @param entity    post参数
-     * @return          HttpResponse请求结果实例
+     * @param body      post参数, 比如BCPayReqParams.transToJsonBody
+     * @return          BCHttpResponse请求结果实例
      */
-    public static HttpResponse httpPost(String url, StringEntity entity) {
-        HttpClient client = wrapClient();
+    public static BCHttpResponse sendPost(String url, BCHttpRequest.Body body) {
+        return sendPost(url, body, BCMetrics.endpointOf(url));
+    }
 
-        HttpPost httpPost = new HttpPost(url);
-        httpPost.setEntity(entity);
+    /**
+     * 通过BCHttpTransport发送http post 请求
+     * @param url       请求url
+     * @param body      post参数
+     * @param endpoint  用于统计的接口, 比如url相同的支付和生成二维码
+     * @return          BCHttpResponse请求结果实例
+     */
+    static BCHttpResponse sendPost(String url, BCHttpRequest.Body body, BCMetrics.Endpoint endpoint) {
+        BCHttpRequest httpPost = new BCHttpRequest(BCHttpRequest.METHOD_POST, url);
+        httpPost.setTimeout(BCCache.getInstance().networkTimeout);
+        httpPost.setBody(body);
         try {
-            return client.execute(httpPost);
+            return execute(httpPost, endpoint);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.w(TAG, "post failed: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * 通过BCHttpTransport发送http post 请求
+     * @param url       请求url
+     * @param entity    post参数
+     * @return          BCHttpResponse请求结果实例
+     */
+    public static BCHttpResponse sendPost(String url, HttpEntity entity) {
+        return sendPost(url, BCApacheHttpTransport.toBody(entity));
+    }
+
+    /**
+     * 通过BCHttpTransport发送http post 请求
+     * @param url       请求url
+     * @param para      post参数
+     * @return          BCHttpResponse请求结果实例
+     */
+    public static BCHttpResponse sendPost(String url, Map<String, Object> para) {
+        return sendPost(url, BCJsonCodec.getGson().toJson(para));
+    }
+
+    /**
+     * 通过BCHttpTransport发送http post 请求
+     * @param url       请求url
+     * @param json      json格式的post参数
+     * @return          BCHttpResponse请求结果实例
+     */
+    public static BCHttpResponse sendPost(String url, String json) {
+        return sendPost(url, BCHttpRequest.jsonBody(json));
+    }
+
+    /**
+     * http post 请求
+     * @param url       请求url
+     * @param entity    post参数
+     * @return          HttpResponse请求结果实例
+     * @deprecated 请使用sendPost, 本方法把BCHttpResponse转换为HttpResponse, 读取完内容后请关闭
+     */
+    @Deprecated
+    public static HttpResponse httpPost(String url, StringEntity entity) {
+        return toHttpResponse(sendPost(url, (HttpEntity) entity));
+    }
+
     /**
      * http post 请求
      * @param url       请求url
      * @param para      post参数
      * @return          HttpResponse请求结果实例
+     * @deprecated 请使用sendPost, 本方法把BCHttpResponse转换为HttpResponse, 读取完内容后请关闭
      */
+    @Deprecated
     public static HttpResponse httpPost(String url, Map<String, Object> para) {
-        Gson gson = new Gson();
-        String param = gson.toJson(para);
-        StringEntity entity;
-        try {
-            entity = new StringEntity(param, HTTP.UTF_8);
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+        return toHttpResponse(sendPost(url, para));
+    }
+
+    /**
+     * 将BCHttpResponse转换为之前httpGet和httpPost返回的HttpResponse
+     * 返回内容已经解压, 读取完entity的内容后连接回到连接池
+     * @param response  BCHttpResponse实例, 可为null
+     * @return          HttpResponse实例, response为null时返回null
+     */
+    private static HttpResponse toHttpResponse(BCHttpResponse response) {
+        if (response == null)
             return null;
+
+        BasicHttpResponse result = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                response.getStatusCode(), null);
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet())
+            result.addHeader(header.getKey(), header.getValue());
+
+        String contentLength = response.getHeaders().get("content-length");
+        long length = -1;
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException ignored) {
+            }
         }
-        entity.setContentType("application/json");
-        return httpPost(url, entity);
+
+        InputStreamEntity entity = new InputStreamEntity(response.getContent(), length);
+        entity.setContentType(response.getHeaders().get("content-type"));
+        result.setEntity(entity);
+        return result;
     }
 }
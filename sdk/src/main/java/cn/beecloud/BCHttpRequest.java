@@ -0,0 +1,211 @@
+/**
+ * BCHttpRequest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 与具体网络库无关的http请求, 由BCHttpTransport执行
+ * 可以在其他线程调用abort取消, 取消的方式由BCHttpTransport通过setAbortAction提供
+ * @see BCHttpTransport
+ */
+public class BCHttpRequest {
+
+    public static final String METHOD_GET = "GET";
+    public static final String METHOD_POST = "POST";
+
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    private Body body;
+
+    //连接和读取的超时时间, 以毫秒为单位
+    private int timeout;
+
+    private boolean aborted;
+    private Runnable abortAction;
+
+    /**
+     * 构造函数
+     * @param method    请求方法, METHOD_GET或者METHOD_POST
+     * @param url       请求url
+     */
+    public BCHttpRequest(String method, String url) {
+        this.method = method;
+        this.url = url;
+    }
+
+    /**
+     * @return  请求方法
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return  请求url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * 设置请求头, 相同名字的请求头会被替换
+     * @param name      请求头名字
+     * @param value     请求头的值
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    /**
+     * @return  所有请求头, 不包含Content-Type, Content-Type由Body提供
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * @param body  请求体, 只用于post请求
+     */
+    public void setBody(Body body) {
+        this.body = body;
+    }
+
+    /**
+     * @return  请求体, 没有时为null
+     */
+    public Body getBody() {
+        return body;
+    }
+
+    /**
+     * @param timeout   连接和读取的超时时间, 以毫秒为单位
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return  连接和读取的超时时间, 以毫秒为单位
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 取消请求, 正在执行的BCHttpTransport.execute会抛出IOException
+     * 重复调用没有影响
+     */
+    public void abort() {
+        Runnable action;
+        synchronized (this) {
+            if (aborted)
+                return;
+
+            aborted = true;
+            action = abortAction;
+        }
+
+        if (action != null)
+            action.run();
+    }
+
+    /**
+     * @return  true表示请求已经被取消
+     */
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * 由BCHttpTransport设置取消当前请求的方式, 比如关闭连接
+     * 请求已经被取消时立即执行
+     * @param action    取消操作
+     */
+    public void setAbortAction(Runnable action) {
+        boolean abortNow;
+        synchronized (this) {
+            abortAction = action;
+            abortNow = aborted;
+        }
+
+        if (abortNow && action != null)
+            action.run();
+    }
+
+    /**
+     * 生成json格式的请求体
+     * @param json  json串
+     * @return      UTF-8编码, Content-Type为application/json的请求体
+     */
+    public static Body jsonBody(String json) {
+        try {
+            return new ByteArrayBody(json.getBytes("UTF-8"), "application/json");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * 请求体
+     * 可以重复写入, 请求失败重试时会再次调用writeTo
+     */
+    public interface Body {
+
+        /**
+         * @return  Content-Type, 比如application/json
+         */
+        String getMediaType();
+
+        /**
+         * @return  字节数, 未知时为-1
+         */
+        long getContentLength();
+
+        /**
+         * 写入请求体
+         * @param outstream     输出流
+         * @throws IOException  写入失败
+         */
+        void writeTo(OutputStream outstream) throws IOException;
+    }
+
+    /**
+     * 字节数组请求体
+     */
+    private static class ByteArrayBody implements Body {
+        private final byte[] bytes;
+        private final String mediaType;
+
+        ByteArrayBody(byte[] bytes, String mediaType) {
+            this.bytes = bytes;
+            this.mediaType = mediaType;
+        }
+
+        @Override
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        @Override
+        public long getContentLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            outstream.write(bytes);
+            outstream.flush();
+        }
+    }
+}
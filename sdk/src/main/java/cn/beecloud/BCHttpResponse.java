@@ -0,0 +1,122 @@
+/**
+ * BCHttpResponse.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 与具体网络库无关的http返回结果, 由BCHttpTransport生成
+ * 使用完毕后必须读完并关闭getContent返回的数据流, 或者调用close, 连接才会回到连接池
+ * @see BCHttpTransport
+ */
+public class BCHttpResponse implements Closeable {
+
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final InputStream content;
+
+    //产生该结果的请求, 由BCHttpClientUtil设置, 用于关联事件
+    private BCHttpRequest request;
+
+    /**
+     * 构造函数
+     * @param statusCode    http状态码
+     * @param headers       返回头, 同名的返回头只保留一个, 可为null
+     * @param content       返回内容, 关闭时需要释放连接, 可为null
+     */
+    public BCHttpResponse(int statusCode, Map<String, String> headers, InputStream content) {
+        this.statusCode = statusCode;
+
+        Map<String, String> lowerCaseHeaders = new HashMap<String, String>();
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                if (entry.getKey() != null)
+                    lowerCaseHeaders.put(entry.getKey().toLowerCase(Locale.US), entry.getValue());
+            }
+        }
+        this.headers = Collections.unmodifiableMap(lowerCaseHeaders);
+
+        this.content = content == null ? new ByteArrayInputStream(new byte[0]) : content;
+    }
+
+    /**
+     * @return  http状态码
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @param name  返回头名字, 不区分大小写
+     * @return      返回头的值, 没有时为null
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * @return  所有返回头, 名字为小写
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return  返回内容的数据流, 只能读取一次
+     */
+    public InputStream getContent() {
+        return content;
+    }
+
+    /**
+     * @return  产生该结果的请求, 不是通过BCHttpClientUtil执行时为null
+     */
+    BCHttpRequest getRequest() {
+        return request;
+    }
+
+    void setRequest(BCHttpRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * 以UTF-8读取全部返回内容, 并释放连接
+     * @return  返回内容
+     * @throws IOException  读取失败
+     */
+    public String getContentAsString() throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = content.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+
+            return out.toString("UTF-8");
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 释放连接, 未读取的内容会被丢弃
+     */
+    @Override
+    public void close() {
+        try {
+            content.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
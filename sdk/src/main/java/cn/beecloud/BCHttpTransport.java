@@ -0,0 +1,36 @@
+/**
+ * BCHttpTransport.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.IOException;
+
+/**
+ * 网络传输层, BCPay和BCQuery的所有请求都通过BCHttpClientUtil交给当前的BCHttpTransport执行
+ * 默认为基于HttpURLConnection的BCUrlConnectionTransport, 可以通过BeeCloud.setHttpTransport替换:
+ * BCApacheHttpTransport为之前基于Apache HttpClient的实现;
+ * 也可以接入OkHttp等支持HTTP/2多路复用的网络库, 让并发的查询共用到每个主机的一个连接,
+ * 实现时在execute中同步执行请求, 并通过request.setAbortAction注册取消当前调用的操作;
+ * 返回未解压的原始内容并保留Content-Encoding返回头, 由BCHttpClientUtil统计流量后统一解压,
+ * 网络库自动解压时需要同时去掉Content-Encoding返回头
+ * 实现必须是线程安全的
+ * @see BeeCloud#setHttpTransport(BCHttpTransport)
+ */
+public interface BCHttpTransport {
+
+    /**
+     * 同步执行请求
+     * 返回任何http状态码都不应抛出异常, 5xx等错误由调用方处理
+     * @param request       请求实例
+     * @return              返回结果, 调用方负责关闭
+     * @throws IOException  网络异常, 请求被abort时也会抛出
+     */
+    BCHttpResponse execute(BCHttpRequest request) throws IOException;
+
+    /**
+     * 释放连接池等资源, 之后的请求可以重新建立连接
+     */
+    void shutdown();
+}
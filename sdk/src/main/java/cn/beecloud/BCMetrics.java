@@ -0,0 +1,543 @@
+/**
+ * BCMetrics.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * SDK网络请求的统计
+ * 按接口和主机分别记录请求延迟的直方图, 成功数, 按原因分类的失败数, 重试数, 以及发送和接收的字节数;
+ * 记录时只有原子操作, 不加锁, 可以在每个请求上开启
+ * 通过snapshot获取当前的统计, 或者通过addListener在每个请求结束时收到通知, 上报到自己的监控系统
+ */
+public class BCMetrics {
+    private static final String TAG = "BCMetrics";
+
+    /**
+     * 请求的接口
+     */
+    public enum Endpoint {
+        /**
+         * 支付
+         */
+        BILL_PAY,
+        /**
+         * 生成二维码
+         */
+        QRCODE,
+        /**
+         * 支付订单查询
+         */
+        BILLS,
+        /**
+         * 退款订单查询
+         */
+        REFUNDS,
+        /**
+         * 退款状态查询
+         */
+        REFUND_STATUS,
+        /**
+         * 其他
+         */
+        OTHER
+    }
+
+    /**
+     * 请求失败的原因
+     */
+    public enum Failure {
+        /**
+         * 连接或者读取超时
+         */
+        TIMEOUT,
+        /**
+         * 其他网络异常
+         */
+        NETWORK,
+        /**
+         * 服务端返回5xx
+         */
+        SERVER_ERROR,
+        /**
+         * 服务端返回4xx
+         */
+        CLIENT_ERROR,
+        /**
+         * 被取消, 比如对冲请求中落后的一方, 或者调用方取消了BCFuture
+         */
+        CANCELLED
+    }
+
+    /**
+     * 请求结束时的通知, 在发起请求的线程中同步调用, 不应执行耗时操作
+     */
+    public interface Listener {
+        /**
+         * 收到返回或者请求失败时调用
+         * @param endpoint      请求的接口
+         * @param host          请求的主机, 比如https://apibj.beecloud.cn
+         * @param statusCode    http状态码, 网络异常时为0
+         * @param failure       失败原因, 成功时为null
+         * @param latencyNanos  从发起请求到收到返回头或者失败的时间, 以纳秒为单位
+         */
+        void onRequestFinished(Endpoint endpoint, String host, int statusCode,
+                               Failure failure, long latencyNanos);
+
+        /**
+         * 请求失败后重试, 或者发起对冲请求时调用
+         * @param endpoint      请求的接口
+         * @param host          失败或者较慢的主机
+         */
+        void onRetry(Endpoint endpoint, String host);
+    }
+
+    private static final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private BCMetrics() {}
+
+    /**
+     * 添加请求结束时的通知
+     * @param listener  Listener实例
+     */
+    public static void addListener(Listener listener) {
+        if (listener != null)
+            listeners.add(listener);
+    }
+
+    /**
+     * 移除请求结束时的通知
+     * @param listener  Listener实例
+     */
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return  当前所有接口和主机的统计, 每项统计内部不保证是同一时刻的值
+     */
+    public static Snapshot snapshot() {
+        List<EndpointSnapshot> entries = new ArrayList<EndpointSnapshot>(stats.size());
+        for (Stats item : stats.values())
+            entries.add(item.snapshot());
+        return new Snapshot(entries);
+    }
+
+    /**
+     * 清空统计, 比如每次上报之后
+     */
+    public static void reset() {
+        stats.clear();
+    }
+
+    /**
+     * 根据请求的url判断接口, 支付和生成二维码的url相同, 均视为BILL_PAY
+     * @param url   请求url
+     * @return      请求的接口
+     */
+    static Endpoint endpointOf(String url) {
+        if (url == null)
+            return Endpoint.OTHER;
+
+        int query = url.indexOf('?');
+        String path = query < 0 ? url : url.substring(0, query);
+
+        if (path.endsWith("rest/bills"))
+            return Endpoint.BILLS;
+        if (path.endsWith("rest/refunds"))
+            return Endpoint.REFUNDS;
+        if (path.endsWith("rest/refund/status"))
+            return Endpoint.REFUND_STATUS;
+        if (path.endsWith("rest/bill"))
+            return Endpoint.BILL_PAY;
+        return Endpoint.OTHER;
+    }
+
+    /**
+     * @param e     请求的异常
+     * @param request   请求实例
+     * @return      失败原因
+     */
+    static Failure failureOf(IOException e, BCHttpRequest request) {
+        if (request.isAborted())
+            return Failure.CANCELLED;
+        //SocketTimeoutException以及Apache HttpClient的ConnectTimeoutException
+        if (e instanceof InterruptedIOException)
+            return Failure.TIMEOUT;
+        return Failure.NETWORK;
+    }
+
+    /**
+     * 记录一次请求的结果
+     */
+    static void recordRequest(Endpoint endpoint, String host, int statusCode,
+                              Failure failure, long latencyNanos, long bytesOut) {
+        Stats item = statsOf(endpoint, host);
+        item.latency.record(latencyNanos);
+        if (failure == null)
+            item.successCount.incrementAndGet();
+        else
+            item.failureCounts.incrementAndGet(failure.ordinal());
+        if (bytesOut > 0)
+            item.bytesOut.addAndGet(bytesOut);
+
+        for (Listener listener : listeners) {
+            //监控上报的异常不应影响请求本身
+            try {
+                listener.onRequestFinished(endpoint, host, statusCode, failure, latencyNanos);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 记录一次重试
+     */
+    static void recordRetry(Endpoint endpoint, String host) {
+        statsOf(endpoint, host).retryCount.incrementAndGet();
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onRetry(endpoint, host);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 包装解压前的返回内容, 读取时记录接收的字节数, 即网络上传输的字节数
+     */
+    static InputStream countBytesIn(Endpoint endpoint, String host, InputStream content) {
+        if (content == null)
+            return null;
+        return new CountingInputStream(content, statsOf(endpoint, host).bytesIn);
+    }
+
+    private static Stats statsOf(Endpoint endpoint, String host) {
+        String key = endpoint.name() + ' ' + host;
+        Stats item = stats.get(key);
+        if (item == null) {
+            Stats created = new Stats(endpoint, host);
+            item = stats.putIfAbsent(key, created);
+            if (item == null)
+                item = created;
+        }
+        return item;
+    }
+
+    /**
+     * 单个接口和主机的计数
+     */
+    private static class Stats {
+        final Endpoint endpoint;
+        final String host;
+        final Histogram latency = new Histogram();
+        final AtomicLong successCount = new AtomicLong();
+        final AtomicLongArray failureCounts = new AtomicLongArray(Failure.values().length);
+        final AtomicLong retryCount = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+
+        Stats(Endpoint endpoint, String host) {
+            this.endpoint = endpoint;
+            this.host = host;
+        }
+
+        EndpointSnapshot snapshot() {
+            long[] failures = new long[failureCounts.length()];
+            for (int i = 0; i < failures.length; i++)
+                failures[i] = failureCounts.get(i);
+
+            return new EndpointSnapshot(endpoint, host, latency.snapshot(), successCount.get(),
+                    failures, retryCount.get(), bytesOut.get(), bytesIn.get());
+        }
+    }
+
+    /**
+     * 无锁的延迟直方图
+     * 以微秒记录, 每个2的幂次区间再分为8个桶, 相对误差不超过12.5%, 最大约19小时
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int MAX_EXPONENT = 36;
+        //最后一个桶记录所有超过2^MAX_EXPONENT微秒的值
+        private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS + SUB_BUCKETS + 1;
+
+        private final AtomicLongArray buckets;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        Histogram() {
+            buckets = new AtomicLongArray(BUCKET_COUNT);
+        }
+
+        private Histogram(long[] counts, long count, long sumMicros, long maxMicros) {
+            buckets = new AtomicLongArray(counts);
+            this.count.set(count);
+            this.sumMicros.set(sumMicros);
+            this.maxMicros.set(maxMicros);
+        }
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets.incrementAndGet(bucketOf(micros));
+            count.incrementAndGet();
+            sumMicros.addAndGet(micros);
+
+            long max;
+            while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+                //重试直到更新成功或者已有更大的值
+            }
+        }
+
+        Histogram snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            //count与各个桶分别读取, 以桶的合计为准, 保证分位数计算一致
+            return new Histogram(counts, total, sumMicros.get(), maxMicros.get());
+        }
+
+        private static int bucketOf(long micros) {
+            if (micros < 2 * SUB_BUCKETS)
+                return (int) micros;
+
+            int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+            if (exponent == MAX_EXPONENT)
+                return BUCKET_COUNT - 1;
+
+            int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS) * SUB_BUCKETS + SUB_BUCKETS + sub;
+        }
+
+        //桶的下界, 以微秒为单位
+        private static long lowerBoundOf(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS)
+                return bucket;
+
+            int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+            int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        }
+
+        /**
+         * @return  记录的次数
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return  平均延迟, 以纳秒为单位, 没有记录时为0
+         */
+        public long getMeanNanos() {
+            long total = count.get();
+            return total == 0 ? 0 : sumMicros.get() * 1000 / total;
+        }
+
+        /**
+         * @return  最大延迟, 以纳秒为单位
+         */
+        public long getMaxNanos() {
+            return maxMicros.get() * 1000;
+        }
+
+        /**
+         * 估算分位延迟, 取所在桶的中点
+         * @param percentile    (0, 1]之间, 比如0.99
+         * @return              延迟, 以纳秒为单位, 没有记录时为0
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = count.get();
+            if (total == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    long lower = lowerBoundOf(i);
+                    long upper = i + 1 < BUCKET_COUNT ? lowerBoundOf(i + 1) : lower;
+                    return Math.min((lower + upper) / 2, maxMicros.get()) * 1000;
+                }
+            }
+            return getMaxNanos();
+        }
+    }
+
+    /**
+     * 某一时刻所有接口和主机的统计
+     */
+    public static class Snapshot {
+        private final List<EndpointSnapshot> entries;
+
+        Snapshot(List<EndpointSnapshot> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * @return  每个接口和主机的统计
+         */
+        public List<EndpointSnapshot> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @param endpoint  请求的接口
+         * @return          该接口在所有主机上的统计
+         */
+        public List<EndpointSnapshot> getEntries(Endpoint endpoint) {
+            List<EndpointSnapshot> matched = new ArrayList<EndpointSnapshot>();
+            for (EndpointSnapshot entry : entries) {
+                if (entry.getEndpoint() == endpoint)
+                    matched.add(entry);
+            }
+            return matched;
+        }
+    }
+
+    /**
+     * 单个接口和主机的统计
+     */
+    public static class EndpointSnapshot {
+        private final Endpoint endpoint;
+        private final String host;
+        private final Histogram latency;
+        private final long successCount;
+        private final long[] failureCounts;
+        private final long retryCount;
+        private final long bytesOut;
+        private final long bytesIn;
+
+        EndpointSnapshot(Endpoint endpoint, String host, Histogram latency, long successCount,
+                         long[] failureCounts, long retryCount, long bytesOut, long bytesIn) {
+            this.endpoint = endpoint;
+            this.host = host;
+            this.latency = latency;
+            this.successCount = successCount;
+            this.failureCounts = failureCounts;
+            this.retryCount = retryCount;
+            this.bytesOut = bytesOut;
+            this.bytesIn = bytesIn;
+        }
+
+        /**
+         * @return  请求的接口
+         */
+        public Endpoint getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return  请求的主机
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return  所有请求的延迟直方图, 包括失败的请求
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return  返回2xx或者3xx的请求数
+         */
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        /**
+         * @param failure   失败原因
+         * @return          该原因的失败数
+         */
+        public long getFailureCount(Failure failure) {
+            return failureCounts[failure.ordinal()];
+        }
+
+        /**
+         * @return  该主机失败或者较慢后的重试次数
+         */
+        public long getRetryCount() {
+            return retryCount;
+        }
+
+        /**
+         * @return  发送的请求内容字节数
+         */
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * @return  读取的返回内容字节数, 压缩的内容为解压前的字节数
+         */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+    }
+
+    /**
+     * 读取时累计字节数
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0)
+                counter.addAndGet(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0)
+                counter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
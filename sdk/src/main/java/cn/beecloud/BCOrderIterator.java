@@ -0,0 +1,242 @@
+/**
+ * BCOrderIterator.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import cn.beecloud.entity.BCBill;
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCReqParams;
+import cn.beecloud.entity.BCRestfulCommonResult;
+
+/**
+ * 自动分页的订单迭代器
+ * 按需通过skip/limit逐页查询, 在调用方处理当前页时于查询线程池中预取下一页,
+ * 内存中最多只保留当前页和一个预取页, 可以用固定的内存遍历大量订单
+ * hasNext和next可能阻塞等待网络请求, 不能在UI线程调用
+ * 查询失败时迭代结束, 通过getErrorResult获取失败信息
+ */
+public class BCOrderIterator implements Iterator<BCBill> {
+
+    /**
+     * 单页最小记录数
+     */
+    public static final int MIN_PAGE_SIZE = 10;
+
+    /**
+     * 单页最大记录数
+     */
+    public static final int MAX_PAGE_SIZE = 50;
+
+    /**
+     * 提前结束迭代的条件
+     */
+    public interface StopCondition {
+        /**
+         * @param order     即将返回的订单
+         * @return          true表示结束迭代, 该订单不再返回
+         */
+        boolean shouldStop(BCBill order);
+    }
+
+    private final BCReqParams.BCChannelTypes channel;
+    private final boolean refund;
+    private final String billNum;
+    private final String refundNum;
+    private final Long startTime;
+    private final Long endTime;
+    private final int pageSize;
+    private final StopCondition stopCondition;
+
+    //下一页的skip
+    private int nextSkip;
+
+    //服务端已经没有更多数据
+    private boolean lastPageFetched;
+
+    private List<BCBill> page;
+    private int pageIndex;
+
+    //预取的下一页
+    private Future<BCQueryOrderResult> prefetch;
+
+    //下一个要返回的订单
+    private BCBill nextOrder;
+
+    private boolean finished;
+
+    private BCQueryOrderResult errorResult;
+
+    /**
+     * 构造函数, 通过BCQuery.iterateBills或者BCQuery.iterateRefunds获取实例
+     */
+    BCOrderIterator(BCReqParams.BCChannelTypes channel, boolean refund,
+                    String billNum, String refundNum, Long startTime, Long endTime,
+                    int pageSize, StopCondition stopCondition) {
+        this.channel = channel;
+        this.refund = refund;
+        this.billNum = billNum;
+        this.refundNum = refundNum;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.pageSize = Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, pageSize));
+        this.stopCondition = stopCondition;
+    }
+
+    /**
+     * @return  true表示还有订单, 可能阻塞等待下一页
+     */
+    @Override
+    public synchronized boolean hasNext() {
+        if (nextOrder != null)
+            return true;
+
+        if (finished)
+            return false;
+
+        while (page == null || pageIndex >= page.size()) {
+            if (!loadNextPage()) {
+                finish();
+                return false;
+            }
+        }
+
+        BCBill order = page.get(pageIndex);
+        //释放已经返回的订单
+        page.set(pageIndex++, null);
+
+        if (stopCondition != null && stopCondition.shouldStop(order)) {
+            finish();
+            return false;
+        }
+
+        nextOrder = order;
+        return true;
+    }
+
+    /**
+     * @return  下一个订单, 退款查询时为BCRefundOrder
+     */
+    @Override
+    public synchronized BCBill next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        BCBill order = nextOrder;
+        nextOrder = null;
+        return order;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove is not supported in BCOrderIterator");
+    }
+
+    /**
+     * 结束迭代, 取消正在进行的预取并释放缓存的订单
+     */
+    public synchronized void close() {
+        finish();
+    }
+
+    /**
+     * @return  查询失败时的结果信息, 没有失败则为null
+     */
+    public synchronized BCQueryOrderResult getErrorResult() {
+        return errorResult;
+    }
+
+    /**
+     * 加载下一页并预取再下一页
+     * @return  false表示没有更多数据或者查询失败
+     */
+    private boolean loadNextPage() {
+        page = null;
+        pageIndex = 0;
+
+        if (prefetch == null && lastPageFetched)
+            return false;
+
+        BCQueryOrderResult result = (prefetch != null) ? awaitPrefetch() : fetchPage(nextSkip);
+        prefetch = null;
+
+        if (result == null)
+            return false;
+
+        if (result.getResultCode() == null || result.getResultCode() != 0) {
+            errorResult = result;
+            return false;
+        }
+
+        List<BCBill> orders = result.getOrders();
+        if (orders == null || orders.size() < pageSize)
+            lastPageFetched = true;
+
+        if (orders == null || orders.isEmpty())
+            return false;
+
+        nextSkip += orders.size();
+        page = orders;
+
+        if (!lastPageFetched)
+            startPrefetch(nextSkip);
+
+        return true;
+    }
+
+    private BCQueryOrderResult fetchPage(int skip) {
+        BCQuery query = BCQuery.getInstance();
+        if (refund)
+            return query.queryRefunds(channel, billNum, refundNum, startTime, endTime, skip, pageSize);
+        else
+            return query.queryBills(channel, billNum, startTime, endTime, skip, pageSize);
+    }
+
+    private void startPrefetch(final int skip) {
+        try {
+            prefetch = BCCache.queryExecutorService.submit(new Callable<BCQueryOrderResult>() {
+                @Override
+                public BCQueryOrderResult call() {
+                    return fetchPage(skip);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //查询线程池已满, 等到需要时在调用线程中查询
+            prefetch = null;
+        }
+    }
+
+    private BCQueryOrderResult awaitPrefetch() {
+        try {
+            return prefetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errorResult = new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, "Interrupted", 0, null);
+        } catch (ExecutionException e) {
+            errorResult = new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, String.valueOf(e.getCause()), 0, null);
+        }
+        return null;
+    }
+
+    private void finish() {
+        finished = true;
+        page = null;
+        nextOrder = null;
+
+        if (prefetch != null) {
+            prefetch.cancel(true);
+            prefetch = null;
+        }
+    }
+}
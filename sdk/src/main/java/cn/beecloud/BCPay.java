@@ -15,28 +15,24 @@ import android.os.Looper;
 import android.util.Log;
 
 import com.alipay.sdk.app.PayTask;
-import com.google.gson.Gson;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
 import com.tencent.mm.sdk.constants.Build;
 import com.tencent.mm.sdk.modelpay.PayReq;
 import com.tencent.mm.sdk.openapi.IWXAPI;
 import com.tencent.mm.sdk.openapi.WXAPIFactory;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
-import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.async.BCResult;
+import cn.beecloud.entity.BCJsonCodec;
 import cn.beecloud.entity.BCPayReqParams;
 import cn.beecloud.entity.BCPayResult;
 import cn.beecloud.entity.BCQRCodeResult;
@@ -50,6 +46,9 @@ import cn.beecloud.entity.BCRestfulCommonResult;
 public class BCPay {
     private static final String TAG = "BCPay";
 
+    //生成的二维码图片缓存
+    private static final BCQRCodeCache qrCodeCache = new BCQRCodeCache();
+
     /**
      * 保留callback实例
      */
@@ -225,91 +224,105 @@ public class BCPay {
             return;
         }
 
-        payCallback = callback;
-
-        BCCache.executorService.execute(new Runnable() {
+        //支付结束后订单状态可能已经改变, 清除该订单的查询缓存
+        payCallback = new BCCallback() {
             @Override
-            public void run() {
-
-                //校验并准备公用参数
-                BCPayReqParams parameters = null;
-                try {
-                    parameters = new BCPayReqParams(channelType);
-                } catch (BCException e) {
-                    callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_EXCEPTION,
-                            e.getMessage()));
-                    return;
-                }
-
-                String paramValidRes = prepareParametersForPay(billTitle, billTotalFee,
-                        billNum, optional, parameters);
-
-                if (paramValidRes != null) {
-                    callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_INVALID_PARAMS,
-                            paramValidRes));
-                    return;
-                }
+            public void done(BCResult result) {
+                BCQuery.getInstance().invalidateCache(billNum);
+                callback.done(result);
+            }
+        };
 
-                String payURL = BCHttpClientUtil.getBillPayURL();
+        try {
+            BCCache.payExecutorService.execute(BCFuture.wrap(callback, new Runnable() {
+                @Override
+                public void run() {
 
-                HttpResponse response = BCHttpClientUtil.httpPost(payURL, parameters.transToBillReqMapParams());
-                if (null == response) {
-                    callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_NETWORK_ISSUE,
-                            "Network Error"));
-                    return;
-                }
-                if (response.getStatusLine().getStatusCode() == 200) {
-                    String ret;
+                    //校验并准备公用参数
+                    BCPayReqParams parameters = null;
                     try {
-                        ret = EntityUtils.toString(response.getEntity(), "UTF-8");
+                        parameters = new BCPayReqParams(channelType);
+                    } catch (BCException e) {
+                        callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_EXCEPTION,
+                                e.getMessage()));
+                        return;
+                    }
 
-                        Gson res = new Gson();
-                        Map<String, Object> responseMap = res.fromJson(ret, HashMap.class);
+                    String paramValidRes = prepareParametersForPay(billTitle, billTotalFee,
+                            billNum, optional, parameters);
 
-                        //判断后台返回结果
-                        Double resultCode = (Double) responseMap.get("result_code");
-                        if (resultCode == 0) {
+                    if (paramValidRes != null) {
+                        callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_INVALID_PARAMS,
+                                paramValidRes));
+                        return;
+                    }
 
-                            if (mContextActivity != null) {
+                    String payURL = BCHttpClientUtil.getBillPayURL();
 
-                                //针对不同的支付渠道调用不同的API
-                                switch (channelType){
-                                    case WX_APP:
-                                        reqWXPaymentViaAPP(responseMap);
-                                        break;
-                                    case ALI_APP:
-                                        reqAliPaymentViaAPP(responseMap);
-                                        break;
-                                    case UN_APP:
-                                        reqUnionPaymentViaAPP(responseMap);
-                                        break;
-                                    default:
-                                        callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_INVALID_PARAMS,
-                                                "channelType参数不合法"));
-                                }
+                    BCHttpResponse response = BCHttpClientUtil.sendPost(payURL, parameters.transToJsonBody());
+                    if (null == response) {
+                        callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_NETWORK_ISSUE,
+                                "Network Error"));
+                        return;
+                    }
+                    if (response.getStatusCode() == 200) {
+                        String ret;
+                        try {
+                            ret = response.getContentAsString();
+
+                            long parseStart = BCEvents.parseStart(response);
+                            Map<String, Object> responseMap = BCJsonCodec.getGson().fromJson(ret, HashMap.class);
+                            BCEvents.parseEnd(response, parseStart);
+
+                            //判断后台返回结果
+                            Double resultCode = (Double) responseMap.get("result_code");
+                            if (resultCode == 0) {
+
+                                if (mContextActivity != null) {
+
+                                    //针对不同的支付渠道调用不同的API
+                                    switch (channelType){
+                                        case WX_APP:
+                                            reqWXPaymentViaAPP(responseMap);
+                                            break;
+                                        case ALI_APP:
+                                            reqAliPaymentViaAPP(responseMap);
+                                            break;
+                                        case UN_APP:
+                                            reqUnionPaymentViaAPP(responseMap);
+                                            break;
+                                        default:
+                                            callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_INVALID_PARAMS,
+                                                    "channelType参数不合法"));
+                                    }
 
+                                } else {
+                                    callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_EXCEPTION,
+                                            "Context-Activity Exception in reqAliPayment"));
+                                }
                             } else {
-                                callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_EXCEPTION,
-                                        "Context-Activity Exception in reqAliPayment"));
+                                //返回后端传回的错误信息
+                                callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_ERR_FROM_SERVER,
+                                        String.valueOf(responseMap.get("result_msg")) +
+                                                String.valueOf(responseMap.get("err_detail"))));
                             }
-                        } else {
-                            //返回后端传回的错误信息
-                            callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_ERR_FROM_SERVER,
-                                    String.valueOf(responseMap.get("result_msg")) +
-                                            String.valueOf(responseMap.get("err_detail"))));
-                        }
 
-                    } catch (IOException e) {
+                        } catch (IOException e) {
+                            callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_NETWORK_ISSUE,
+                                    "Invalid Response"));
+                        }
+                    } else {
+                        BCHttpClientUtil.releaseResponse(response);
                         callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_NETWORK_ISSUE,
-                                "Invalid Response"));
+                                "Network Error"));
                     }
-                } else {
-                    callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_NETWORK_ISSUE,
-                            "Network Error"));
-                }
 
-            }
-        });
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            callback.done(new BCPayResult(BCPayResult.RESULT_FAIL, BCPayResult.FAIL_EXCEPTION,
+                    e.getMessage()));
+        }
     }
 
     /**
@@ -440,6 +453,55 @@ public class BCPay {
                 billNum, optional, callback);
     }
 
+    /**
+     * 微信支付, 返回可以等待支付结果的BCFuture
+     * 支付结果仍然需要在跳转回来之后才能获得, 取消只会放弃等待
+     *
+     * @param billTitle       商品描述, UTF8编码格式, 32个字节内
+     * @param billTotalFee    支付金额，以分为单位，必须是正整数
+     * @param billNum         商户自定义订单号
+     * @param optional        为扩展参数，可以传入任意数量的key/value对来补充对业务逻辑的需求
+     * @return                支付结果的BCFuture
+     */
+    public BCFuture<BCPayResult> reqWXPaymentFuture(final String billTitle, final Integer billTotalFee,
+                                                    final String billNum, final Map<String, String> optional) {
+        BCFuture<BCPayResult> future = new BCFuture<BCPayResult>();
+        reqWXPaymentAsync(billTitle, billTotalFee, billNum, optional, future);
+        return future;
+    }
+
+    /**
+     * 支付宝支付, 返回可以等待支付结果的BCFuture
+     *
+     * @param billTitle       商品描述, UTF8编码格式, 32个字节内
+     * @param billTotalFee    支付金额，以分为单位，必须是正整数
+     * @param billNum         商户自定义订单号
+     * @param optional        为扩展参数，可以传入任意数量的key/value对来补充对业务逻辑的需求
+     * @return                支付结果的BCFuture
+     */
+    public BCFuture<BCPayResult> reqAliPaymentFuture(final String billTitle, final Integer billTotalFee,
+                                                     final String billNum, final Map<String, String> optional) {
+        BCFuture<BCPayResult> future = new BCFuture<BCPayResult>();
+        reqAliPaymentAsync(billTitle, billTotalFee, billNum, optional, future);
+        return future;
+    }
+
+    /**
+     * 银联在线支付, 返回可以等待支付结果的BCFuture
+     *
+     * @param billTitle       商品描述, UTF8编码格式, 32个字节内
+     * @param billTotalFee    支付金额，以分为单位，必须是正整数
+     * @param billNum         商户自定义订单号
+     * @param optional        为扩展参数，可以传入任意数量的key/value对来补充对业务逻辑的需求
+     * @return                支付结果的BCFuture
+     */
+    public BCFuture<BCPayResult> reqUnionPaymentFuture(final String billTitle, final Integer billTotalFee,
+                                                       final String billNum, final Map<String, String> optional) {
+        BCFuture<BCPayResult> future = new BCFuture<BCPayResult>();
+        reqUnionPaymentAsync(billTitle, billTotalFee, billNum, optional, future);
+        return future;
+    }
+
     /**
      * 将string转化成对应的bitmap
      *
@@ -449,7 +511,7 @@ public class BCPay {
      * @param marginSize                生成的图片中二维码到图片边缘的留边
      * @param color                     二维码图片的前景色
      * @param colorBack                 二维码图片的背景色
-     * @return bitmap                   QR Code图片
+     * @return bitmap                   QR Code图片, 开启二维码图片缓存时可能是缓存的实例, 此时不应recycle
      * @throws WriterException          zxing无法生成QR Code
      * @throws IllegalStateException    本函数不应该在UI主进程调用, 通过使用AsyncTask或者新建进程
      */
@@ -457,31 +519,77 @@ public class BCPay {
                                         int imageWidth, int imageHeight,
                                         int marginSize, int color, int colorBack)
             throws WriterException, IllegalStateException {
+        return generateBitmap(contentsToEncode, imageWidth, imageHeight,
+                marginSize, color, colorBack, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 将string转化成对应的bitmap
+     *
+     * @param contentsToEncode          原始字符串
+     * @param imageWidth                生成的图片宽度, 以px为单位
+     * @param imageHeight               生成的图片高度, 以px为单位
+     * @param marginSize                生成的图片中二维码到图片边缘的留边
+     * @param color                     二维码图片的前景色
+     * @param colorBack                 二维码图片的背景色
+     * @param config                    Bitmap.Config, RGB_565和ALPHA_8占用的内存分别为ARGB_8888的1/2和1/4
+     *                                  @see BCQRCodeRenderer#render
+     * @return bitmap                   QR Code图片, 开启二维码图片缓存时可能是缓存的实例, 此时不应recycle
+     *                                  @see BeeCloud#setQRCodeCache
+     * @throws WriterException          zxing无法生成QR Code
+     * @throws IllegalStateException    本函数不应该在UI主进程调用, 通过使用AsyncTask或者新建进程
+     */
+    public static Bitmap generateBitmap(String contentsToEncode,
+                                        int imageWidth, int imageHeight,
+                                        int marginSize, int color, int colorBack,
+                                        Bitmap.Config config)
+            throws WriterException, IllegalStateException {
 
         if (Looper.myLooper() == Looper.getMainLooper()) {
             throw new IllegalStateException("Should not be invoked from the UI thread");
         }
 
-        Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
-        hints.put(EncodeHintType.MARGIN, marginSize);
-        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-
-        MultiFormatWriter writer = new MultiFormatWriter();
-        BitMatrix result = writer.encode(contentsToEncode, BarcodeFormat.QR_CODE, imageWidth, imageHeight, hints);
+        return renderBitmap(contentsToEncode, null, imageWidth, imageHeight,
+                marginSize, color, colorBack, config);
+    }
 
-        final int width = result.getWidth();
-        final int height = result.getHeight();
-        int[] pixels = new int[width * height];
-        for (int y = 0; y < height; y++) {
-            int offset = y * width;
-            for (int x = 0; x < width; x++) {
-                pixels[offset + x] = result.get(x, y) ? color : colorBack;
-            }
+    /**
+     * 生成二维码图片, 开启缓存时优先返回缓存的图片
+     *
+     * @param matrix    已经生成的模块矩阵, null则根据contentsToEncode生成
+     * @throws WriterException  zxing无法生成QR Code
+     */
+    static Bitmap renderBitmap(String contentsToEncode, BCQRCodeMatrix matrix,
+                               int imageWidth, int imageHeight,
+                               int marginSize, int color, int colorBack, Bitmap.Config config)
+            throws WriterException {
+        boolean cacheEnabled = BCCache.getInstance().qrCodeCacheMaxBytes > 0;
+
+        BCQRCodeCache.Key key = null;
+        if (cacheEnabled) {
+            key = new BCQRCodeCache.Key(contentsToEncode, imageWidth, imageHeight,
+                    marginSize, color, colorBack, config);
+            Bitmap cached = qrCodeCache.get(key);
+            if (cached != null)
+                return cached;
         }
 
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-        return bitmap;
+        if (matrix == null)
+            matrix = BCQRCodeMatrix.encode(contentsToEncode);
+        Bitmap bitmap = BCQRCodeRenderer.render(matrix, imageWidth, imageHeight,
+                marginSize, color, colorBack, config);
+
+        return cacheEnabled ? qrCodeCache.put(key, bitmap) : bitmap;
+    }
+
+    /**
+     * 获取二维码图片缓存, 可用于查看命中率或者清除缓存
+     *
+     * @return  BCQRCodeCache实例
+     * @see BeeCloud#setQRCodeCache
+     */
+    public static BCQRCodeCache getQRCodeCache() {
+        return qrCodeCache;
     }
 
     /**
@@ -512,135 +620,140 @@ public class BCPay {
             return;
         }
 
-        BCCache.executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-
-                //校验并准备公用参数
-                BCPayReqParams parameters = null;
-                try {
-                    parameters = new BCPayReqParams(channelType, BCReqParams.ReqType.QRCODE);
-                } catch (BCException e) {
-                    callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
-                    return;
-                }
+        try {
+            BCCache.payExecutorService.execute(BCFuture.wrap(callback, new Runnable() {
+                @Override
+                public void run() {
 
-                String paramValidRes = prepareParametersForPay(billTitle, billTotalFee,
-                        billNum, optional, parameters);
+                    //校验并准备公用参数
+                    BCPayReqParams parameters = null;
+                    try {
+                        parameters = new BCPayReqParams(channelType, BCReqParams.ReqType.QRCODE);
+                    } catch (BCException e) {
+                        callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                                BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
+                        return;
+                    }
 
-                if (paramValidRes != null) {
-                    callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL,
-                            paramValidRes));
-                    return;
-                }
+                    String paramValidRes = prepareParametersForPay(billTitle, billTotalFee,
+                            billNum, optional, parameters);
 
-                //添加ALI_QRCODE参数
-                if (channelType == BCReqParams.BCChannelTypes.ALI_QRCODE){
-                    if (returnUrl == null || !BCValidationUtil.isStringValidURL(returnUrl)){
+                    if (paramValidRes != null) {
                         callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
                                 BCRestfulCommonResult.APP_INNER_FAIL,
-                                "returnUrl为ALI_QRCODE的必填参数，并且需要以http://或https://开始"));
+                                paramValidRes));
                         return;
                     }
 
-                    parameters.returnUrl = returnUrl;
-                    parameters.qrPayMode = qrPayMode;
-                }
-
-                String qrCodeReqURL = BCHttpClientUtil.getQRCodeReqURL();
+                    //添加ALI_QRCODE参数
+                    if (channelType == BCReqParams.BCChannelTypes.ALI_QRCODE){
+                        if (returnUrl == null || !BCValidationUtil.isStringValidURL(returnUrl)){
+                            callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                                    BCRestfulCommonResult.APP_INNER_FAIL,
+                                    "returnUrl为ALI_QRCODE的必填参数，并且需要以http://或https://开始"));
+                            return;
+                        }
 
-                HttpResponse response = BCHttpClientUtil.httpPost(qrCodeReqURL, parameters.transToBillReqMapParams());
-                if (null == response) {
-                    callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL,
-                            "Network Error"));
-                    return;
-                }
-                if (response.getStatusLine().getStatusCode() == 200) {
-                    String ret;
-                    try {
-                        ret = EntityUtils.toString(response.getEntity(), "UTF-8");
+                        parameters.returnUrl = returnUrl;
+                        parameters.qrPayMode = qrPayMode;
+                    }
 
-                        Gson res = new Gson();
-                        Map<String, Object> responseMap = res.fromJson(ret, HashMap.class);
+                    String qrCodeReqURL = BCHttpClientUtil.getQRCodeReqURL();
 
-                        //判断后台返回结果
-                        Integer resultCode = ((Double) responseMap.get("result_code")).intValue();
-                        if (resultCode == 0) {
+                    BCHttpResponse response = BCHttpClientUtil.sendPost(qrCodeReqURL, parameters.transToJsonBody(),
+                            BCMetrics.Endpoint.QRCODE);
+                    if (null == response) {
+                        callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                                BCRestfulCommonResult.APP_INNER_FAIL,
+                                "Network Error"));
+                        return;
+                    }
+                    if (response.getStatusCode() == 200) {
+                        String ret;
+                        try {
+                            ret = response.getContentAsString();
 
-                            String content = null;
-                            Bitmap qrBitmap = null;
-                            String aliQRCodeHtml = null;
-                            int imgSize = BCQRCodeResult.DEFAULT_QRCODE_WIDTH;;
+                            long parseStart = BCEvents.parseStart(response);
+                            BCQRCodeResult serverResult = BCQRCodeResult.transJsonToResultObject(ret, channelType);
+                            BCEvents.parseEnd(response, parseStart);
 
-                            //针对不同的支付渠道获取不同的参数
-                            switch (channelType){
-                                case WX_NATIVE:
-                                    if (responseMap.get("code_url") != null) {
-                                        content = (String) responseMap.get("code_url");
-                                    }
-                                    break;
-                                case ALI_QRCODE:
-                                    if (responseMap.get("url") != null) {
-                                        content = (String) responseMap.get("url");
-                                    }
-                                    aliQRCodeHtml = String.valueOf(responseMap.get("html"));
-                                    break;
-                                case ALI_OFFLINE_QRCODE:
-                                    if (responseMap.get("qr_code") != null) {
-                                        content = (String) responseMap.get("qr_code");
-                                    }
-                                    break;
-                                default:
-                                    callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                                            BCRestfulCommonResult.APP_INNER_FAIL,
-                                            "channelType参数不合法"));
-                            }
+                            //判断后台返回结果
+                            Integer resultCode = serverResult.getResultCode();
+                            if (resultCode == 0) {
 
-                            if (genQRCode && content != null) {
+                                String content = serverResult.getQrCodeRawContent();
+                                Bitmap qrBitmap = null;
+                                String aliQRCodeHtml = null;
+                                int imgSize = BCQRCodeResult.DEFAULT_QRCODE_WIDTH;
 
-                                if (qrCodeWidth != null)
-                                    imgSize = qrCodeWidth;
+                                //针对不同的支付渠道获取不同的参数
+                                switch (channelType){
+                                    case WX_NATIVE:
+                                    case ALI_OFFLINE_QRCODE:
+                                        break;
+                                    case ALI_QRCODE:
+                                        aliQRCodeHtml = String.valueOf(serverResult.getAliQRCodeHtml());
+                                        break;
+                                    default:
+                                        callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                                                BCRestfulCommonResult.APP_INNER_FAIL,
+                                                "channelType参数不合法"));
+                                        return;
+                                }
 
-                                try {
-                                    qrBitmap = BCPay.generateBitmap(content, imgSize,
-                                            imgSize, 0,
-                                            Color.BLACK, Color.WHITE);
-                                } catch (WriterException e) {
-                                    callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                                            BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
-                                    return;
+                                //生成图片时同时保留模块矩阵, 否则由getQrCodeMatrix在首次获取时生成
+                                BCQRCodeMatrix qrMatrix = null;
+                                if (genQRCode && content != null) {
+
+                                    if (qrCodeWidth != null)
+                                        imgSize = qrCodeWidth;
+
+                                    //ALPHA_8只保留透明度, 背景需要透明
+                                    Bitmap.Config config = BCCache.getInstance().qrCodeBitmapConfig;
+                                    int colorBack = config == Bitmap.Config.ALPHA_8 ?
+                                            Color.TRANSPARENT : Color.WHITE;
+
+                                    try {
+                                        qrMatrix = BCQRCodeMatrix.encode(content);
+                                        qrBitmap = renderBitmap(content, qrMatrix, imgSize,
+                                                imgSize, 0,
+                                                Color.BLACK, colorBack, config);
+                                    } catch (WriterException e) {
+                                        callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                                                BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
+                                        return;
+                                    }
                                 }
+
+                                BCEvents.dispatch(callback, new BCQRCodeResult(resultCode,
+                                        serverResult.getResultMsg(),
+                                        serverResult.getErrDetail(),
+                                        imgSize, imgSize,
+                                        content, qrBitmap,
+                                        aliQRCodeHtml, qrMatrix));
+
+                            } else {
+                                //返回服务端传回的错误信息
+                                BCEvents.dispatch(callback, serverResult);
                             }
 
-                            callback.done(new BCQRCodeResult(resultCode,
-                                    String.valueOf(responseMap.get("result_msg")),
-                                    String.valueOf(responseMap.get("err_detail")),
-                                    imgSize, imgSize,
-                                    content, qrBitmap,
-                                    aliQRCodeHtml));
-
-                        } else {
-                            //返回服务端传回的错误信息
-                            callback.done(new BCQRCodeResult(resultCode,
-                                    String.valueOf(responseMap.get("result_msg")),
-                                    String.valueOf(responseMap.get("err_detail"))));
+                        } catch (IOException e) {
+                            callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
                         }
-
-                    } catch (IOException e) {
+                    } else {
+                        BCHttpClientUtil.releaseResponse(response);
                         callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                                BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
+                                BCRestfulCommonResult.APP_INNER_FAIL,
+                                "Network Error"));
                     }
-                } else {
-                    callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL,
-                            "Network Error"));
-                }
 
-            }
-        });
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            callback.done(new BCQRCodeResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage()));
+        }
     }
 
     /**
@@ -683,6 +796,44 @@ public class BCPay {
                 billNum, optional, false, null, qrPayMode, returnUrl, callback);
     }
 
+    /**
+     * 生成微信支付二维码, 返回可以等待、设置超时和取消的BCFuture
+     *
+     * @param billTitle       商品描述, UTF8编码格式, 32个字节内
+     * @param billTotalFee    支付金额，以分为单位，必须是正整数
+     * @param billNum         商户自定义订单号
+     * @param optional        为扩展参数，可以传入任意数量的key/value对来补充对业务逻辑的需求
+     * @param genQRCode       是否生成QRCode Bitmap
+     * @param qrCodeWidth     如果生成, QRCode的宽度, null则使用默认参数
+     * @return                二维码结果的BCFuture
+     */
+    public BCFuture<BCQRCodeResult> reqWXQRCodeFuture(final String billTitle, final Integer billTotalFee,
+                                                      final String billNum, final Map<String, String> optional,
+                                                      final Boolean genQRCode, final Integer qrCodeWidth) {
+        BCFuture<BCQRCodeResult> future = new BCFuture<BCQRCodeResult>();
+        reqWXQRCodeAsync(billTitle, billTotalFee, billNum, optional, genQRCode, qrCodeWidth, future);
+        return future;
+    }
+
+    /**
+     * 生成支付宝内嵌支付二维码, 返回可以等待、设置超时和取消的BCFuture
+     *
+     * @param billTitle       商品描述, UTF8编码格式, 32个字节内
+     * @param billTotalFee    支付金额，以分为单位，必须是正整数
+     * @param billNum         商户自定义订单号
+     * @param optional        为扩展参数，可以传入任意数量的key/value对来补充对业务逻辑的需求
+     * @param returnUrl       同步返回页面, 必填
+     * @param qrPayMode       支付宝内嵌二维码类型, 可为null
+     * @return                二维码结果的BCFuture
+     */
+    public BCFuture<BCQRCodeResult> reqAliQRCodeFuture(final String billTitle, final Integer billTotalFee,
+                                                       final String billNum, final Map<String, String> optional,
+                                                       final String returnUrl, final String qrPayMode) {
+        BCFuture<BCQRCodeResult> future = new BCFuture<BCQRCodeResult>();
+        reqAliQRCodeAsync(billTitle, billTotalFee, billNum, optional, returnUrl, qrPayMode, future);
+        return future;
+    }
+
     /** 暂不开放!!!
      * 生成支付宝线下支付二维码
      *
@@ -0,0 +1,209 @@
+/**
+ * BCQRCodeCache.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 二维码图片缓存
+ * 以二维码内容和生成参数为key缓存生成的Bitmap, 按LRU淘汰, 总大小以Bitmap占用的字节数计算;
+ * 缓存的Bitmap都已经返回给调用方, 可能仍在显示, 所以被淘汰时不会recycle, 由GC在不再引用后回收,
+ * 只有显式调用clear时才会recycle; 调用方不应自己recycle缓存返回的Bitmap,
+ * 已经被调用方recycle的Bitmap在获取时会被丢弃
+ * 配置来自BCCache, 大小为0时不缓存
+ */
+public class BCQRCodeCache {
+
+    //access order, 最久未使用的在最前
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    //当前缓存的总字节数
+    private long totalBytes;
+
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    /**
+     * 获取缓存的二维码图片
+     * @return  缓存的Bitmap, 没有时返回null
+     */
+    synchronized Bitmap get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.bitmap.isRecycled()) {
+            entries.remove(key);
+            totalBytes -= entry.bytes;
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.bitmap;
+    }
+
+    /**
+     * 缓存生成的二维码图片, 超过大小时淘汰最久未使用的图片
+     * @return  应该返回给调用方的Bitmap: 其他线程已经缓存了相同的图片时返回已缓存的实例, 否则返回bitmap
+     */
+    synchronized Bitmap put(Key key, Bitmap bitmap) {
+        Entry existing = entries.get(key);
+        if (existing != null && !existing.bitmap.isRecycled()) {
+            //bitmap还没有返回给任何调用方, 可以直接回收
+            bitmap.recycle();
+            return existing.bitmap;
+        }
+        if (existing != null) {
+            entries.remove(key);
+            totalBytes -= existing.bytes;
+        }
+
+        long maxBytes = BCCache.getInstance().qrCodeCacheMaxBytes;
+        int bytes = bitmap.getByteCount();
+        if (bytes > maxBytes)
+            return bitmap;
+
+        entries.put(key, new Entry(bitmap, bytes));
+        totalBytes += bytes;
+        trimToSize(maxBytes);
+        return bitmap;
+    }
+
+    /**
+     * 淘汰最久未使用的图片, 直到总大小不超过maxBytes
+     * 被淘汰的图片可能仍在显示, 不会recycle
+     * @param maxBytes  允许的最大字节数
+     */
+    synchronized void trimToSize(long maxBytes) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry evicted = iterator.next();
+            iterator.remove();
+            totalBytes -= evicted.bytes;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * 清除并recycle所有缓存的图片, 比如在显示二维码的界面全部销毁时调用,
+     * 之后不能再使用之前从缓存获取的Bitmap
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values())
+            entry.bitmap.recycle();
+        trimToSize(-1);
+    }
+
+    /**
+     * @return  命中次数
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return  未命中次数
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return  命中率, 没有获取过时为0
+     */
+    public synchronized double getHitRate() {
+        int total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return  被淘汰的图片数, 包括clear清除的图片
+     */
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return  当前缓存的图片数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return  当前缓存的图片占用的总字节数
+     */
+    public synchronized long getByteCount() {
+        return totalBytes;
+    }
+
+    private static class Entry {
+        final Bitmap bitmap;
+        //放入时的大小, recycle之后无法再获取
+        final int bytes;
+
+        Entry(Bitmap bitmap, int bytes) {
+            this.bitmap = bitmap;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 二维码内容和生成参数
+     */
+    static class Key {
+        final String content;
+        final int imageWidth;
+        final int imageHeight;
+        final int marginSize;
+        final int color;
+        final int colorBack;
+        final Bitmap.Config config;
+
+        Key(String content, int imageWidth, int imageHeight, int marginSize,
+            int color, int colorBack, Bitmap.Config config) {
+            this.content = content;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.marginSize = marginSize;
+            this.color = color;
+            this.colorBack = colorBack;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return imageWidth == key.imageWidth && imageHeight == key.imageHeight &&
+                    marginSize == key.marginSize && color == key.color &&
+                    colorBack == key.colorBack && config == key.config &&
+                    content.equals(key.content);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = content.hashCode();
+            result = 31 * result + imageWidth;
+            result = 31 * result + imageHeight;
+            result = 31 * result + marginSize;
+            result = 31 * result + color;
+            result = 31 * result + colorBack;
+            result = 31 * result + (config == null ? 0 : config.hashCode());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * BCQRCodeDrawable.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * 按BCQRCodeMatrix绘制二维码的Drawable
+ * 前景模块预先合并为Path, 绘制时按bounds缩放, 任意大小都不需要额外的Bitmap, 旋转或者改变大小时也无需重新生成;
+ * 没有固有大小, 需要由View指定大小. 放大倍数不小于1时取整, 与BCQRCodeRenderer生成的Bitmap布局一致
+ */
+public class BCQRCodeDrawable extends Drawable {
+
+    private final BCQRCodeMatrix matrix;
+    private final int marginSize;
+    private final int color;
+    private final int colorBack;
+
+    //以模块为单位的前景模块
+    private final Path path;
+
+    private final Paint paint = new Paint();
+
+    private int alpha = 255;
+    private ColorFilter colorFilter;
+
+    /**
+     * 构造函数, 黑色前景, 白色背景, 没有留边
+     *
+     * @param matrix    模块矩阵
+     */
+    public BCQRCodeDrawable(BCQRCodeMatrix matrix) {
+        this(matrix, 0, Color.BLACK, Color.WHITE);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param matrix        模块矩阵
+     * @param marginSize    二维码到边缘的最小留边, 以模块为单位
+     * @param color         前景色
+     * @param colorBack     背景色, Color.TRANSPARENT表示不绘制背景
+     */
+    public BCQRCodeDrawable(BCQRCodeMatrix matrix, int marginSize, int color, int colorBack) {
+        this.matrix = matrix;
+        this.marginSize = marginSize;
+        this.color = color;
+        this.colorBack = colorBack;
+        this.path = buildPath(matrix);
+    }
+
+    /**
+     * 每行中连续的前景模块合并为一个矩形
+     */
+    private static Path buildPath(BCQRCodeMatrix matrix) {
+        Path path = new Path();
+        final int width = matrix.getWidth();
+
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            int x = 0;
+            while (x < width) {
+                if (!matrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+
+                int end = x + 1;
+                while (end < width && matrix.get(end, y))
+                    end++;
+
+                path.addRect(x, y, end, y + 1, Path.Direction.CW);
+                x = end;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * @return  模块矩阵
+     */
+    public BCQRCodeMatrix getMatrix() {
+        return matrix;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        final int width = bounds.width();
+        final int height = bounds.height();
+        if (width <= 0 || height <= 0)
+            return;
+
+        final int inputWidth = matrix.getWidth();
+        final int inputHeight = matrix.getHeight();
+
+        float scale = Math.min((float) width / (inputWidth + marginSize * 2),
+                (float) height / (inputHeight + marginSize * 2));
+        //每个模块占用整数像素, 模块之间没有接缝
+        if (scale >= 1)
+            scale = (float) Math.floor(scale);
+
+        final int left = bounds.left + (int) ((width - inputWidth * scale) / 2);
+        final int top = bounds.top + (int) ((height - inputHeight * scale) / 2);
+
+        paint.setColorFilter(colorFilter);
+
+        if (Color.alpha(colorBack) != 0) {
+            setPaintColor(colorBack);
+            canvas.drawRect(bounds, paint);
+        }
+
+        setPaintColor(color);
+        int saveCount = canvas.save();
+        canvas.translate(left, top);
+        canvas.scale(scale, scale);
+        canvas.drawPath(path, paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void setPaintColor(int paintColor) {
+        paint.setColor(paintColor);
+        paint.setAlpha(Color.alpha(paintColor) * alpha / 255);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (this.alpha != alpha) {
+            this.alpha = alpha;
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        this.colorFilter = colorFilter;
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        if (alpha == 255 && colorFilter == null
+                && Color.alpha(color) == 255 && Color.alpha(colorBack) == 255)
+            return PixelFormat.OPAQUE;
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * BCQRCodeMatrix.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * 二维码的模块矩阵, 不包括留边
+ * 每个模块按行连续占用1位, 最大的二维码(177x177)也不到4KB, 实例不可修改, 可在线程间共享;
+ * 可以通过BCQRCodeRenderer生成任意大小的Bitmap, 或者通过BCQRCodeDrawable直接绘制
+ */
+public class BCQRCodeMatrix {
+
+    private final int width;
+    private final int height;
+    private final int[] bits;
+
+    /**
+     * 构造函数
+     *
+     * @param modules   每个模块对应1px的zxing矩阵, true表示前景色
+     */
+    public BCQRCodeMatrix(BitMatrix modules) {
+        width = modules.getWidth();
+        height = modules.getHeight();
+        bits = new int[(width * height + 31) >>> 5];
+
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (modules.get(x, y)) {
+                    int index = offset + x;
+                    bits[index >>> 5] |= 1 << (index & 31);
+                }
+            }
+        }
+    }
+
+    /**
+     * 生成字符串对应的模块矩阵
+     *
+     * @param contentsToEncode  原始字符串
+     * @return                  模块矩阵
+     * @throws WriterException  zxing无法生成QR Code
+     */
+    public static BCQRCodeMatrix encode(String contentsToEncode) throws WriterException {
+        return new BCQRCodeMatrix(BCQRCodeRenderer.encodeModules(contentsToEncode));
+    }
+
+    /**
+     * @return  每行的模块数
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return  模块的行数
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param x     列
+     * @param y     行
+     * @return      true表示该模块为前景色
+     */
+    public boolean get(int x, int y) {
+        int index = y * width + x;
+        return (bits[index >>> 5] & (1 << (index & 31))) != 0;
+    }
+
+    /**
+     * @param y         行
+     * @param otherY    另一行
+     * @return          两行的模块是否完全相同
+     */
+    boolean rowEquals(int y, int otherY) {
+        for (int x = 0; x < width; x++) {
+            if (get(x, y) != get(x, otherY))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return  模块数据占用的字节数
+     */
+    public int getByteCount() {
+        return bits.length * 4;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * BCQRCodeRenderer.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 二维码图片的生成
+ * 先按每个模块1px编码, 再按模块放大写入Bitmap, 不需要分配整张图片大小的像素数组;
+ * 一行模块只生成一次像素, 相同颜色的连续模块整段填充, 放大后的各行直接复制第一行;
+ * ALPHA_8在API 26之前不支持setPixels, 改为通过Canvas绘制前景模块
+ */
+public class BCQRCodeRenderer {
+
+    //保留在线程中复用的像素缓冲区的最大长度, 超过时用完即释放
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<int[]> buffer = new ThreadLocal<int[]>();
+
+    private BCQRCodeRenderer() {}
+
+    /**
+     * 生成二维码的模块矩阵, 每个模块对应1px, 不包括留边
+     *
+     * @param contentsToEncode  原始字符串
+     * @return                  模块矩阵, true表示前景色
+     * @throws WriterException  zxing无法生成QR Code
+     */
+    public static BitMatrix encodeModules(String contentsToEncode) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, 0);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+
+        //宽高为0时zxing不做放大, 每个模块对应1px
+        return new MultiFormatWriter().encode(contentsToEncode, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    /**
+     * 将模块矩阵绘制成Bitmap
+     *
+     * @see #render(BCQRCodeMatrix, int, int, int, int, int, Bitmap.Config)
+     */
+    public static Bitmap render(BitMatrix modules, int imageWidth, int imageHeight,
+                                int marginSize, int color, int colorBack, Bitmap.Config config) {
+        return render(new BCQRCodeMatrix(modules), imageWidth, imageHeight,
+                marginSize, color, colorBack, config);
+    }
+
+    /**
+     * 将模块矩阵绘制成Bitmap, 布局与zxing直接按图片大小编码的结果一致:
+     * 模块按整数倍放大, 放大倍数取宽高能容纳的最大值, 二维码在图片中居中
+     *
+     * @param matrix        模块矩阵
+     * @param imageWidth    图片宽度, 以px为单位, 小于二维码所需的最小宽度时使用最小宽度
+     * @param imageHeight   图片高度, 以px为单位, 小于二维码所需的最小高度时使用最小高度
+     * @param marginSize    二维码到图片边缘的最小留边, 以模块为单位
+     * @param color         前景色
+     * @param colorBack     背景色
+     * @param config        Bitmap.Config, RGB_565不保留透明度, ALPHA_8只保留颜色的alpha值,
+     *                      比如前景色Color.BLACK, 背景色Color.TRANSPARENT, 显示时由Paint决定颜色
+     * @return              二维码图片
+     */
+    public static Bitmap render(BCQRCodeMatrix matrix, int imageWidth, int imageHeight,
+                                int marginSize, int color, int colorBack, Bitmap.Config config) {
+        final int inputWidth = matrix.getWidth();
+        final int inputHeight = matrix.getHeight();
+        final int qrWidth = inputWidth + marginSize * 2;
+        final int qrHeight = inputHeight + marginSize * 2;
+        final int outputWidth = Math.max(imageWidth, qrWidth);
+        final int outputHeight = Math.max(imageHeight, qrHeight);
+
+        final int multiple = Math.min(outputWidth / qrWidth, outputHeight / qrHeight);
+        final int leftPadding = (outputWidth - inputWidth * multiple) / 2;
+        final int topPadding = (outputHeight - inputHeight * multiple) / 2;
+
+        Bitmap bitmap = Bitmap.createBitmap(outputWidth, outputHeight, config);
+        bitmap.eraseColor(colorBack);
+
+        if (config == Bitmap.Config.ALPHA_8) {
+            drawModules(bitmap, matrix, multiple, leftPadding, topPadding, color);
+            return bitmap;
+        }
+
+        //一行模块放大后的像素, rowWidth * multiple
+        final int rowWidth = inputWidth * multiple;
+        final int bandSize = rowWidth * multiple;
+        int[] band = obtainBuffer(bandSize);
+
+        for (int y = 0; y < inputHeight; y++) {
+            //与上一行模块相同时直接使用上次生成的像素
+            if (y == 0 || !matrix.rowEquals(y, y - 1)) {
+                fillRow(band, matrix, y, multiple, color, colorBack);
+                for (int offset = rowWidth; offset < bandSize; offset += rowWidth)
+                    System.arraycopy(band, 0, band, offset, rowWidth);
+            }
+
+            bitmap.setPixels(band, 0, rowWidth, leftPadding, topPadding + y * multiple, rowWidth, multiple);
+        }
+
+        releaseBuffer(band);
+        return bitmap;
+    }
+
+    /**
+     * 通过Canvas绘制前景模块, 每行连续的前景模块合并为一个矩形, 相同的连续行合并为一个高度
+     */
+    private static void drawModules(Bitmap bitmap, BCQRCodeMatrix matrix, int multiple,
+                                    int leftPadding, int topPadding, int color) {
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        paint.setColor(color);
+        //直接写入前景色的alpha, 与setPixels的结果一致
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+
+        final int inputWidth = matrix.getWidth();
+        final int inputHeight = matrix.getHeight();
+
+        int y = 0;
+        while (y < inputHeight) {
+            int yEnd = y + 1;
+            while (yEnd < inputHeight && matrix.rowEquals(yEnd, y))
+                yEnd++;
+
+            final int top = topPadding + y * multiple;
+            final int bottom = topPadding + yEnd * multiple;
+
+            int start = 0;
+            while (start < inputWidth) {
+                if (!matrix.get(start, y)) {
+                    start++;
+                    continue;
+                }
+
+                int end = start + 1;
+                while (end < inputWidth && matrix.get(end, y))
+                    end++;
+
+                canvas.drawRect(leftPadding + start * multiple, top,
+                        leftPadding + end * multiple, bottom, paint);
+                start = end;
+            }
+
+            y = yEnd;
+        }
+    }
+
+    /**
+     * 生成一行模块放大后的第一行像素
+     */
+    private static void fillRow(int[] band, BCQRCodeMatrix matrix, int y, int multiple,
+                                int color, int colorBack) {
+        final int inputWidth = matrix.getWidth();
+        int start = 0;
+        while (start < inputWidth) {
+            boolean set = matrix.get(start, y);
+
+            //找到颜色相同的连续模块
+            int end = start + 1;
+            while (end < inputWidth && matrix.get(end, y) == set)
+                end++;
+
+            Arrays.fill(band, start * multiple, end * multiple, set ? color : colorBack);
+            start = end;
+        }
+    }
+
+    private static int[] obtainBuffer(int size) {
+        int[] retained = buffer.get();
+        if (retained != null && retained.length >= size) {
+            buffer.remove();
+            return retained;
+        }
+        return new int[size];
+    }
+
+    private static void releaseBuffer(int[] band) {
+        if (band.length <= MAX_RETAINED_BUFFER)
+            buffer.set(band);
+    }
+}
@@ -8,12 +8,14 @@ package cn.beecloud;
 
 import android.util.Log;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
 
 import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.async.BCResult;
 import cn.beecloud.entity.BCQueryOrderResult;
 import cn.beecloud.entity.BCQueryRefundStatusResult;
 import cn.beecloud.entity.BCQueryReqParams;
@@ -30,6 +32,11 @@ public class BCQuery {
     private static BCQuery instance;
     private BCQuery() {}
 
+    private final BCQueryCache cache = new BCQueryCache();
+
+    //合并相同的进行中异步查询
+    private final BCSingleFlight singleFlight = new BCSingleFlight();
+
     private static final int QUERY_BILL = 0;
     private static final int QUERY_REFUND = 1;
     private static final int QUERY_REFUND_STATUS = 2;
@@ -45,8 +52,160 @@ public class BCQuery {
         return instance;
     }
 
+    /**
+     * @return  查询结果缓存, 可用于查看命中情况
+     */
+    public BCQueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return  进行中查询的合并, 可用于查看合并的次数
+     */
+    public BCSingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * 清除与订单号有关的缓存结果, 以及未结束时间段的缓存结果
+     * 通过BCPay发起的支付结束后会自动调用, 通过其他途径改变了订单状态时可以手动调用
+     * @param billNum   订单号
+     */
+    public void invalidateCache(String billNum) {
+        cache.invalidateBill(billNum);
+    }
+
+    /**
+     * 清除所有缓存的查询结果
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * 同步查询订单主入口, 优先返回缓存的结果
+     * @param channel       支付渠道类型
+     * @param operation     发起的操作类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param refundNum     退款的单号, 可为null
+     * @param startTime     订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param skip          忽略的记录个数, 可为null
+     * @param limit         本次抓取的记录数, 可为null
+     * @return              查询结果
+     */
+    protected BCQueryOrderResult queryOrders(final BCReqParams.BCChannelTypes channel, final Integer operation,
+                                             final String billNum, final String refundNum,
+                                             final Long startTime, final Long endTime,
+                                             final Integer skip, final Integer limit) {
+        if (BCCache.getInstance().queryCacheMaxOrders <= 0)
+            return queryOrdersRemote(channel, operation, billNum, refundNum, startTime, endTime, skip, limit);
+
+        String cachedRefundNum = operation == QUERY_REFUND ? refundNum : null;
+
+        //在查询之前获取, 查询期间的invalidateCache使结果不再缓存
+        long generation = cache.getGeneration();
+
+        BCQueryOrderResult result = cache.getOrders(operation, channel, billNum, cachedRefundNum,
+                startTime, endTime, skip, limit);
+        if (result == null) {
+            result = queryOrdersRemote(channel, operation, billNum, refundNum, startTime, endTime, skip, limit);
+            cache.putOrders(operation, channel, billNum, cachedRefundNum,
+                    startTime, endTime, skip, limit, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * 向服务端查询订单, 在调用线程中执行网络请求
+     * @param channel       支付渠道类型
+     * @param operation     发起的操作类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param refundNum     退款的单号, 可为null
+     * @param startTime     订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param skip          忽略的记录个数, 默认为0, 设置为10表示忽略满足条件的前10条数据, 可为null
+     * @param limit         本次抓取的记录数, 默认为10, [10, 50]之间, 设置为10表示只返回满足条件的10条数据, 可为null
+     * @return              查询结果
+     */
+    private BCQueryOrderResult queryOrdersRemote(final BCReqParams.BCChannelTypes channel, final Integer operation,
+                                                 final String billNum, final String refundNum,
+                                                 final Long startTime, final Long endTime,
+                                                 final Integer skip, final Integer limit) {
+        BCQueryReqParams bcQueryReqParams;
+        try {
+            bcQueryReqParams = new BCQueryReqParams(channel);
+        } catch (BCException e) {
+            return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), 0, null);
+        }
+
+        //common
+        bcQueryReqParams.billNum = billNum;
+        bcQueryReqParams.startTime = startTime;
+        bcQueryReqParams.endTime = endTime;
+        bcQueryReqParams.skip = skip;
+        bcQueryReqParams.limit = limit;
+
+        String queryURL = BCHttpClientUtil.getBillQueryURL();
+
+        if (operation == BCQuery.QUERY_REFUND){
+            bcQueryReqParams.refundNum = refundNum;
+            queryURL = BCHttpClientUtil.getRefundQueryURL();
+        }
+
+        //Log.w("BCQuery",queryURL + bcQueryReqParams.transToEncodedJsonString());
+
+        BCHttpResponse response;
+        if (BCCache.getInstance().queryHedgingEnabled)
+            response = BCHttpClientUtil.httpGetHedged(queryURL +
+                    bcQueryReqParams.transToEncodedJsonString());
+        else
+            response = BCHttpClientUtil.httpGetWithFailover(queryURL +
+                    bcQueryReqParams.transToEncodedJsonString());
+
+        if (null == response) {
+            return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                    "Network Error",0, null);
+        }
+        if (response.getStatusCode() == 200) {
+
+            InputStream content = null;
+            try {
+                //直接从数据流解析, 不生成中间的json串
+                content = response.getContent();
+                long parseStart = BCEvents.parseStart(response);
+                BCQueryOrderResult result = BCQueryOrderResult.transStreamToResultObject(content);
+                BCEvents.parseEnd(response, parseStart);
+                return result;
+            } catch (IOException e) {
+                return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                        "Invalid Response",0, null);
+            } catch (IllegalStateException e) {
+                //json结构与预期不符
+                return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                        "Invalid Response",0, null);
+            } catch (NumberFormatException e) {
+                return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                        "Invalid Response",0, null);
+            } finally {
+                if (content != null) {
+                    try {
+                        content.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        } else {
+            BCHttpClientUtil.releaseResponse(response);
+            return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                    "Network Error",0, null);
+        }
+    }
+
     /**
      * 查询订单主入口
+     * 条件相同的查询正在进行时不再发送网络请求, 等待并共享其结果
      * @param channel       支付渠道类型
      * @param operation     发起的操作类型
      * @param billNum       发起支付时填写的订单号, 可为null
@@ -66,59 +225,75 @@ public class BCQuery {
             return;
         }
 
-        BCCache.executorService.execute(new Runnable() {
-             @Override
-             public void run() {
-                 BCQueryReqParams bcQueryReqParams = null;
-                 try {
-                     bcQueryReqParams = new BCQueryReqParams(channel);
-                 } catch (BCException e) {
-                     callback.done(new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                             BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), 0, null));
-                 }
-
-                 //common
-                 bcQueryReqParams.billNum = billNum;
-                 bcQueryReqParams.startTime = startTime;
-                 bcQueryReqParams.endTime = endTime;
-                 bcQueryReqParams.skip = skip;
-                 bcQueryReqParams.limit = limit;
-
-                 String queryURL = BCHttpClientUtil.getBillQueryURL();
-
-                 if (operation == BCQuery.QUERY_REFUND){
-                     bcQueryReqParams.refundNum = refundNum;
-                     queryURL = BCHttpClientUtil.getRefundQueryURL();
-                 }
-
-                 //Log.w("BCQuery",queryURL + bcQueryReqParams.transToEncodedJsonString());
-
-                 HttpResponse response = BCHttpClientUtil.httpGet(queryURL +
-                    bcQueryReqParams.transToEncodedJsonString());
+        if (BCCache.getInstance().queryCoalescingEnabled) {
+            BCQueryCache.Key key = new BCQueryCache.Key(operation, channel, billNum,
+                    operation == QUERY_REFUND ? refundNum : null, startTime, endTime, skip, limit);
 
-                 if (null == response) {
-                     callback.done(new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
-                             "Network Error",0, null));
-                     return;
-                 }
-                 if (response.getStatusLine().getStatusCode() == 200) {
-
-                     try {
-                         String ret = EntityUtils.toString(response.getEntity(), "UTF-8");
-
-                         callback.done(new BCQueryOrderResult().transJsonToResultObject(ret));
-
-                     } catch (IOException e) {
-                         callback.done(new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
-                                 "Invalid Response",0, null));
-                     }
-                 } else {
-                     callback.done(new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
-                             "Network Error",0, null));
-                 }
-             }
-         });
+            singleFlight.execute(key, callback, BCCache.queryExecutorService, new BCSingleFlight.Call() {
+                @Override
+                BCResult execute() {
+                    return queryOrders(channel, operation, billNum, refundNum,
+                            startTime, endTime, skip, limit);
+                }
 
+                @Override
+                BCResult failure(String errDetail) {
+                    return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                            BCRestfulCommonResult.APP_INNER_FAIL, errDetail, 0, null);
+                }
+            });
+            return;
+        }
+
+        try {
+            BCCache.queryExecutorService.execute(BCFuture.wrap(callback, new Runnable() {
+                @Override
+                public void run() {
+                    BCEvents.dispatch(callback, queryOrders(channel, operation, billNum, refundNum,
+                            startTime, endTime, skip, limit));
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            callback.done(new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), 0, null));
+        }
+
+    }
+
+    /**
+     * 同步查询支付订单, 在调用线程中执行网络请求, 不能在UI线程调用
+     * 适用于已经运行在工作线程中的任务
+     * @param channel       支付渠道类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param startTime     支付订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       支付订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param skip          忽略的记录个数, 默认为0, 设置为10表示忽略满足条件的前10条数据, 可为null
+     * @param limit         本次抓取的记录数, 默认为10, [10, 50]之间, 设置为10表示只返回满足条件的10条数据, 可为null
+     * @return              查询结果
+     */
+    public BCQueryOrderResult queryBills(final BCReqParams.BCChannelTypes channel, final String billNum,
+                                         final Long startTime, final Long endTime,
+                                         final Integer skip, final Integer limit) {
+        return queryOrders(channel, BCQuery.QUERY_BILL, billNum, null, startTime, endTime, skip, limit);
+    }
+
+    /**
+     * 同步查询退款订单, 在调用线程中执行网络请求, 不能在UI线程调用
+     * 适用于已经运行在工作线程中的任务
+     * @param channel       支付渠道类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param refundNum     发起退款时填写的订单号, 可为null
+     * @param startTime     退款订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       退款订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param skip          忽略的记录个数, 默认为0, 设置为10表示忽略满足条件的前10条数据, 可为null
+     * @param limit         本次抓取的记录数, 默认为10, [10, 50]之间, 设置为10表示只返回满足条件的10条数据, 可为null
+     * @return              查询结果
+     */
+    public BCQueryOrderResult queryRefunds(final BCReqParams.BCChannelTypes channel, final String billNum,
+                                           final String refundNum,
+                                           final Long startTime, final Long endTime,
+                                           final Integer skip, final Integer limit) {
+        return queryOrders(channel, BCQuery.QUERY_REFUND, billNum, refundNum, startTime, endTime, skip, limit);
     }
 
     /**
@@ -137,6 +312,43 @@ public class BCQuery {
         queryOrdersAsync(channel, BCQuery.QUERY_BILL, billNum, null, startTime, endTime, skip, limit, callback);
     }
 
+    /**
+     * 自动分页遍历支付订单, 内存中最多保留两页订单
+     * 返回的迭代器可能阻塞等待网络请求, 不能在UI线程中使用
+     * @param channel       支付渠道类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param startTime     支付订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       支付订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param pageSize      每页抓取的记录数, [10, 50]之间
+     * @param stopCondition 提前结束迭代的条件, 可为null
+     * @return              订单迭代器
+     */
+    public BCOrderIterator iterateBills(final BCReqParams.BCChannelTypes channel, final String billNum,
+                                        final Long startTime, final Long endTime, final int pageSize,
+                                        final BCOrderIterator.StopCondition stopCondition) {
+        return new BCOrderIterator(channel, false, billNum, null, startTime, endTime,
+                pageSize, stopCondition);
+    }
+
+    /**
+     * 自动分页遍历退款订单, 内存中最多保留两页订单
+     * 返回的迭代器可能阻塞等待网络请求, 不能在UI线程中使用
+     * @param channel       支付渠道类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param refundNum     发起退款时填写的订单号, 可为null
+     * @param startTime     退款订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       退款订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param pageSize      每页抓取的记录数, [10, 50]之间
+     * @param stopCondition 提前结束迭代的条件, 可为null
+     * @return              订单迭代器, 返回的订单为BCRefundOrder
+     */
+    public BCOrderIterator iterateRefunds(final BCReqParams.BCChannelTypes channel, final String billNum,
+                                          final String refundNum, final Long startTime, final Long endTime,
+                                          final int pageSize, final BCOrderIterator.StopCondition stopCondition) {
+        return new BCOrderIterator(channel, true, billNum, refundNum, startTime, endTime,
+                pageSize, stopCondition);
+    }
+
     /**
      * 根据支付渠道获取订单
      * @param channel       支付渠道
@@ -194,6 +406,152 @@ public class BCQuery {
         queryRefundsAsync(channel, billNum, refundNum, null, null, null, null, callback);
     }
 
+    /**
+     * 查询支付订单, 返回可以等待、设置超时和取消的BCFuture
+     * @param channel       支付渠道类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param startTime     支付订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       支付订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param skip          忽略的记录个数, 默认为0, 可为null
+     * @param limit         本次抓取的记录数, 默认为10, [10, 50]之间, 可为null
+     * @return              查询结果的BCFuture
+     */
+    public BCFuture<BCQueryOrderResult> queryBillsFuture(final BCReqParams.BCChannelTypes channel, final String billNum,
+                                                         final Long startTime, final Long endTime,
+                                                         final Integer skip, final Integer limit) {
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        queryBillsAsync(channel, billNum, startTime, endTime, skip, limit, future);
+        return future;
+    }
+
+    /**
+     * 查询退款订单, 返回可以等待、设置超时和取消的BCFuture
+     * @param channel       支付渠道类型
+     * @param billNum       发起支付时填写的订单号, 可为null
+     * @param refundNum     发起退款时填写的订单号, 可为null
+     * @param startTime     退款订单生成时间, 毫秒时间戳, 13位, 可为null
+     * @param endTime       退款订单完成时间, 毫秒时间戳, 13位, 可为null
+     * @param skip          忽略的记录个数, 默认为0, 可为null
+     * @param limit         本次抓取的记录数, 默认为10, [10, 50]之间, 可为null
+     * @return              查询结果的BCFuture
+     */
+    public BCFuture<BCQueryOrderResult> queryRefundsFuture(final BCReqParams.BCChannelTypes channel, final String billNum,
+                                                           final String refundNum,
+                                                           final Long startTime, final Long endTime,
+                                                           final Integer skip, final Integer limit) {
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        queryRefundsAsync(channel, billNum, refundNum, startTime, endTime, skip, limit, future);
+        return future;
+    }
+
+    /**
+     * 获取退款状态信息, 返回可以等待、设置超时和取消的BCFuture
+     * @param channel       支付的渠道, 目前只支持微信
+     * @param refundNum     退款单号
+     * @return              查询结果的BCFuture
+     */
+    public BCFuture<BCQueryRefundStatusResult> queryRefundStatusFuture(final BCReqParams.BCChannelTypes channel,
+                                                                       final String refundNum) {
+        BCFuture<BCQueryRefundStatusResult> future = new BCFuture<BCQueryRefundStatusResult>();
+        queryRefundStatusAsync(channel, refundNum, future);
+        return future;
+    }
+
+    /**
+     * 同步获取退款状态信息, 在调用线程中执行网络请求, 不能在UI线程调用
+     * 适用于已经运行在工作线程中的任务
+     * @param channel       支付的渠道, 目前只支持微信
+     * @param refundNum     退款单号
+     * @return              查询结果
+     */
+    public BCQueryRefundStatusResult queryRefundStatus(final BCReqParams.BCChannelTypes channel,
+                                                       final String refundNum) {
+        if (refundNum == null)
+            return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, "refundNum不能为null", null);
+
+        if (!BCReqParams.BCChannelTypes.WX_APP.equals(channel))
+            return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, "目前只支持微信退款状态查询", null);
+
+        BCCache bcCache = BCCache.getInstance();
+        if (bcCache.queryCacheMaxOrders <= 0 || bcCache.refundStatusCacheTtl <= 0)
+            return queryRefundStatusRemote(channel, refundNum);
+
+        long generation = cache.getGeneration();
+
+        BCQueryRefundStatusResult result = cache.getRefundStatus(channel, refundNum);
+        if (result == null) {
+            result = queryRefundStatusRemote(channel, refundNum);
+            cache.putRefundStatus(channel, refundNum, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * 向服务端查询退款状态, 在调用线程中执行网络请求
+     * @param channel       支付的渠道
+     * @param refundNum     退款单号
+     * @return              查询结果
+     */
+    private BCQueryRefundStatusResult queryRefundStatusRemote(final BCReqParams.BCChannelTypes channel,
+                                                              final String refundNum) {
+        BCQueryReqParams bcQueryReqParams;
+        try {
+            bcQueryReqParams = new BCQueryReqParams(channel);
+        } catch (BCException e) {
+            return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), null);
+        }
+
+        bcQueryReqParams.refundNum = refundNum;
+
+        String queryURL = BCHttpClientUtil.getRefundStatusURL();
+
+        //Log.w("BCQuery",queryURL + bcQueryReqParams.transToEncodedJsonString());
+
+        BCHttpResponse response = BCHttpClientUtil.httpGetWithFailover(queryURL +
+                bcQueryReqParams.transToEncodedJsonString());
+
+        if (null == response) {
+            return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                    "Network Error", null);
+        }
+        if (response.getStatusCode() == 200) {
+
+            InputStream content = null;
+            try {
+                //直接从数据流解析, 不生成中间的json串
+                content = response.getContent();
+                long parseStart = BCEvents.parseStart(response);
+                BCQueryRefundStatusResult result = BCQueryRefundStatusResult.transStreamToResultObject(content);
+                BCEvents.parseEnd(response, parseStart);
+                return result;
+            } catch (IOException e) {
+                return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                        "Invalid Response", null);
+            } catch (IllegalStateException e) {
+                //json结构与预期不符
+                return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                        "Invalid Response", null);
+            } catch (NumberFormatException e) {
+                return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                        "Invalid Response", null);
+            } finally {
+                if (content != null) {
+                    try {
+                        content.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        } else {
+            BCHttpClientUtil.releaseResponse(response);
+            return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
+                    "Network Error", null);
+        }
+    }
+
     /**
      * 获取退款状态信息
      * @param channel       支付的渠道, 目前只支持微信
@@ -207,55 +565,33 @@ public class BCQuery {
             return;
         }
 
-        BCCache.executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                if (refundNum == null)
-                    callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL, "refundNum不能为null", null));
-
-                if (!channel.equals(BCReqParams.BCChannelTypes.WX_APP))
-                    callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL, "目前只支持微信退款状态查询", null));
-
-                BCQueryReqParams bcQueryReqParams = null;
-                try {
-                    bcQueryReqParams = new BCQueryReqParams(channel);
-                } catch (BCException e) {
-                    callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
-                            BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), null));
+        if (BCCache.getInstance().queryCoalescingEnabled) {
+            singleFlight.execute(BCQueryCache.refundStatusKey(channel, refundNum), callback,
+                    BCCache.queryExecutorService, new BCSingleFlight.Call() {
+                @Override
+                BCResult execute() {
+                    return queryRefundStatus(channel, refundNum);
                 }
 
-                bcQueryReqParams.refundNum = refundNum;
-
-                String queryURL = BCHttpClientUtil.getRefundStatusURL();
-
-                //Log.w("BCQuery",queryURL + bcQueryReqParams.transToEncodedJsonString());
-
-                HttpResponse response = BCHttpClientUtil.httpGet(queryURL +
-                        bcQueryReqParams.transToEncodedJsonString());
-
-                if (null == response) {
-                    callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
-                            "Network Error", null));
-                    return;
+                @Override
+                BCResult failure(String errDetail) {
+                    return new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                            BCRestfulCommonResult.APP_INNER_FAIL, errDetail, null);
                 }
-                if (response.getStatusLine().getStatusCode() == 200) {
-
-                    try {
-                        String ret = EntityUtils.toString(response.getEntity(), "UTF-8");
-
-                        callback.done(new BCQueryRefundStatusResult().transJsonToResultObject(ret));
+            });
+            return;
+        }
 
-                    } catch (IOException e) {
-                        callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
-                                "Invalid Response", null));
-                    }
-                } else {
-                    callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM, BCRestfulCommonResult.APP_INNER_FAIL,
-                            "Network Error", null));
+        try {
+            BCCache.queryExecutorService.execute(BCFuture.wrap(callback, new Runnable() {
+                @Override
+                public void run() {
+                    BCEvents.dispatch(callback, queryRefundStatus(channel, refundNum));
                 }
-            }
-        });
+            }));
+        } catch (RejectedExecutionException e) {
+            callback.done(new BCQueryRefundStatusResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, e.getMessage(), null));
+        }
     }
 }
@@ -0,0 +1,281 @@
+/**
+ * BCQueryCache.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCQueryRefundStatusResult;
+import cn.beecloud.entity.BCReqParams;
+
+/**
+ * 查询结果缓存
+ * 以查询条件为key缓存解析后的查询结果, 按LRU淘汰, 总大小以缓存的订单条数计算;
+ * 每条结果按查询类型设置有效期: 退款状态变化较快, 有效期最短;
+ * 结束时间早于一定时长之前的历史时间段内订单不会再增加, 有效期最长;
+ * 对某个订单发起的支付结束后, 与该订单号有关的结果以及未结束时间段的结果会被清除
+ * 只缓存成功的查询结果, 缓存的结果会被多次返回, 调用方不应修改
+ * 配置来自BCCache, 大小为0时不缓存
+ */
+public class BCQueryCache {
+
+    //结束时间早于该时长之前的时间段视为已结束, 以毫秒为单位
+    private static final long CLOSED_WINDOW_MILLIS = 60L * 60 * 1000;
+
+    //access order, 最久未使用的在最前
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    //当前缓存的总大小
+    private int totalWeight;
+
+    private int hitCount;
+    private int missCount;
+
+    //每次清除缓存时增加, 清除之前开始的查询结果不再放入缓存
+    private long generation;
+
+    /**
+     * 获取缓存的订单查询结果
+     * @return  未过期的结果, 没有时返回null
+     */
+    BCQueryOrderResult getOrders(int operation, BCReqParams.BCChannelTypes channel,
+                                 String billNum, String refundNum,
+                                 Long startTime, Long endTime, Integer skip, Integer limit) {
+        return (BCQueryOrderResult) get(new Key(operation, channel, billNum, refundNum,
+                startTime, endTime, skip, limit));
+    }
+
+    /**
+     * 在发起查询前获取, 用于putOrders和putRefundStatus
+     * @return  当前的缓存版本
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 缓存成功的订单查询结果
+     * @param generation    发起查询前通过getGeneration获取的版本, 期间缓存被清除过时不缓存
+     */
+    void putOrders(int operation, BCReqParams.BCChannelTypes channel,
+                   String billNum, String refundNum,
+                   Long startTime, Long endTime, Integer skip, Integer limit,
+                   BCQueryOrderResult result, long generation) {
+        if (result == null || result.getResultCode() == null || result.getResultCode() != 0)
+            return;
+
+        BCCache cache = BCCache.getInstance();
+
+        boolean closedWindow = endTime != null &&
+                endTime < System.currentTimeMillis() - CLOSED_WINDOW_MILLIS;
+        long ttl = closedWindow ? cache.queryCacheClosedWindowTtl : cache.queryCacheTtl;
+
+        int weight = 1 + (result.getOrders() == null ? 0 : result.getOrders().size());
+
+        put(new Key(operation, channel, billNum, refundNum, startTime, endTime, skip, limit),
+                new Entry(result, billNum, closedWindow, weight, ttl), generation);
+    }
+
+    /**
+     * 获取缓存的退款状态
+     * @return  未过期的结果, 没有时返回null
+     */
+    BCQueryRefundStatusResult getRefundStatus(BCReqParams.BCChannelTypes channel, String refundNum) {
+        return (BCQueryRefundStatusResult) get(refundStatusKey(channel, refundNum));
+    }
+
+    /**
+     * 缓存成功的退款状态查询结果
+     * @param generation    发起查询前通过getGeneration获取的版本, 期间缓存被清除过时不缓存
+     */
+    void putRefundStatus(BCReqParams.BCChannelTypes channel, String refundNum,
+                         BCQueryRefundStatusResult result, long generation) {
+        if (result == null || result.getResultCode() == null || result.getResultCode() != 0)
+            return;
+
+        put(refundStatusKey(channel, refundNum),
+                new Entry(result, null, false, 1, BCCache.getInstance().refundStatusCacheTtl), generation);
+    }
+
+    static Key refundStatusKey(BCReqParams.BCChannelTypes channel, String refundNum) {
+        return new Key(-1, channel, null, refundNum, null, null, null, null);
+    }
+
+    private synchronized Object get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expireNanos - System.nanoTime() <= 0) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.result;
+    }
+
+    private synchronized void put(Key key, Entry entry, long generation) {
+        //查询期间订单状态可能已经改变
+        if (generation != this.generation)
+            return;
+
+        int maxWeight = BCCache.getInstance().queryCacheMaxOrders;
+        if (entry.weight > maxWeight || entry.expireNanos - System.nanoTime() <= 0)
+            return;
+
+        Entry old = entries.put(key, entry);
+        if (old != null)
+            totalWeight -= old.weight;
+        totalWeight += entry.weight;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalWeight > maxWeight && iterator.hasNext()) {
+            totalWeight -= iterator.next().weight;
+            iterator.remove();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            totalWeight -= entry.weight;
+    }
+
+    /**
+     * 清除与订单号有关的查询结果, 以及可能包含新订单的未结束时间段的结果
+     * @param billNum   订单号
+     */
+    synchronized void invalidateBill(String billNum) {
+        generation++;
+
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> item = iterator.next();
+            if (item.getKey().operation < 0)
+                continue;
+
+            Entry entry = item.getValue();
+            boolean related = entry.billNum == null ? !entry.closedWindow : entry.billNum.equals(billNum);
+            if (related) {
+                totalWeight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 清除所有缓存
+     */
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    /**
+     * @return  命中次数
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return  未命中次数, 包括已过期的结果
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return  当前缓存的结果数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        final Object result;
+        final String billNum;
+        final boolean closedWindow;
+        final int weight;
+        final long expireNanos;
+
+        Entry(Object result, String billNum, boolean closedWindow, int weight, long ttlMillis) {
+            this.result = result;
+            this.billNum = billNum;
+            this.closedWindow = closedWindow;
+            this.weight = weight;
+            this.expireNanos = System.nanoTime() + ttlMillis * 1000 * 1000;
+        }
+    }
+
+    /**
+     * 查询条件, operation为-1时表示退款状态查询
+     * 也用于BCSingleFlight合并相同的查询
+     */
+    static class Key {
+        final int operation;
+        final BCReqParams.BCChannelTypes channel;
+        final String billNum;
+        final String refundNum;
+        final Long startTime;
+        final Long endTime;
+        final Integer skip;
+        final Integer limit;
+
+        Key(int operation, BCReqParams.BCChannelTypes channel, String billNum, String refundNum,
+            Long startTime, Long endTime, Integer skip, Integer limit) {
+            this.operation = operation;
+            this.channel = channel;
+            this.billNum = billNum;
+            this.refundNum = refundNum;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return operation == key.operation && channel == key.channel &&
+                    equal(billNum, key.billNum) && equal(refundNum, key.refundNum) &&
+                    equal(startTime, key.startTime) && equal(endTime, key.endTime) &&
+                    equal(skip, key.skip) && equal(limit, key.limit);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = operation;
+            result = 31 * result + hash(channel);
+            result = 31 * result + hash(billNum);
+            result = 31 * result + hash(refundNum);
+            result = 31 * result + hash(startTime);
+            result = 31 * result + hash(endTime);
+            result = 31 * result + hash(skip);
+            result = 31 * result + hash(limit);
+            return result;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        private static int hash(Object o) {
+            return o == null ? 0 : o.hashCode();
+        }
+    }
+}
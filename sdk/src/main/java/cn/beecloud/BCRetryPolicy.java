@@ -0,0 +1,76 @@
+/**
+ * BCRetryPolicy.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.util.Random;
+
+/**
+ * 查询请求的重试策略
+ * 重试间隔为带随机抖动的指数退避(full jitter),
+ * 并通过重试预算限制重试请求占总请求的比例, 避免服务端故障时重试放大流量
+ */
+public class BCRetryPolicy {
+
+    //每个请求为重试预算增加的额度, 即重试请求最多约占总请求的10%
+    private static final double BUDGET_RATIO = 0.1;
+
+    //重试预算上限, 允许短时间内的突发重试
+    private static final double MAX_BUDGET = 10;
+
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private double budget = MAX_BUDGET;
+
+    private final Random random = new Random();
+
+    /**
+     * 构造函数
+     * @param baseBackoffMillis     首次重试的最大等待时间, 以毫秒为单位
+     * @param maxBackoffMillis      重试等待时间上限, 以毫秒为单位
+     */
+    public BCRetryPolicy(long baseBackoffMillis, long maxBackoffMillis) {
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * 每发起一个新请求(不包括重试)时调用, 增加重试预算
+     */
+    public synchronized void onRequest() {
+        budget = Math.min(MAX_BUDGET, budget + BUDGET_RATIO);
+    }
+
+    /**
+     * 尝试消耗一次重试预算
+     * @return  true表示允许重试
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (budget < 1)
+            return false;
+
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * 计算第attempt次请求失败后的等待时间
+     * 在[0, min(maxBackoff, baseBackoff * 2^(attempt-1))]中随机选取
+     * @param attempt   已经完成的请求次数, 从1开始
+     * @return          等待时间, 以毫秒为单位
+     */
+    public long backoffMillis(int attempt) {
+        long ceiling = baseBackoffMillis << Math.min(Math.max(attempt - 1, 0), 16);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis)
+            ceiling = maxBackoffMillis;
+
+        double jitter;
+        synchronized (random) {
+            jitter = random.nextDouble();
+        }
+        return (long) (jitter * ceiling);
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * BCSigner.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.UnsupportedEncodingException;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 请求签名
+ * 算法: md5(app_id+timestamp+app_secret), 32位16进制格式
+ * app_id和app_secret只在构造时编码一次, 每个线程复用克隆的MessageDigest和输出缓冲,
+ * 相同时间戳的签名直接返回缓存的结果, 适用于同一时刻发起的批量请求
+ */
+public class BCSigner {
+
+    private static final char[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    //MD5摘要长度
+    private static final int DIGEST_LENGTH = 16;
+
+    private final String appId;
+    private final String appSecret;
+
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    //用于克隆的MessageDigest, 只在线程第一次签名时使用
+    private final MessageDigest prototype;
+
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace(newDigest());
+        }
+    };
+
+    //最近一次签名的结果
+    private volatile Signature lastSignature;
+
+    /**
+     * 构造函数
+     * @param appId         BeeCloud应用APPID
+     * @param appSecret     BeeCloud应用APPSecret
+     */
+    public BCSigner(String appId, String appSecret) {
+        if (appId == null || appSecret == null)
+            throw new IllegalArgumentException("appId和appSecret不能为null");
+
+        this.appId = appId;
+        this.appSecret = appSecret;
+
+        try {
+            prefix = appId.getBytes("UTF-8");
+            suffix = appSecret.getBytes("UTF-8");
+            prototype = MessageDigest.getInstance("MD5");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return  签名使用的APPID
+     */
+    public String getAppId() {
+        return appId;
+    }
+
+    /**
+     * @param appId         BeeCloud应用APPID
+     * @param appSecret     BeeCloud应用APPSecret
+     * @return              true表示当前签名使用的是这一组appId和appSecret
+     */
+    boolean isSigning(String appId, String appSecret) {
+        return this.appId.equals(appId) && this.appSecret.equals(appSecret);
+    }
+
+    /**
+     * 以当前时间签名
+     * @return  包含时间戳和签名的结果
+     */
+    public Signature signNow() {
+        return sign(System.currentTimeMillis());
+    }
+
+    /**
+     * 对指定的时间戳签名, 时间戳与上一次相同时直接返回上一次的结果
+     * 批量请求可以先获取一个Signature, 再通过BCReqParams.applySignature共用
+     * @param timestamp     时间戳, 毫秒数
+     * @return              包含时间戳和签名的结果
+     */
+    public Signature sign(long timestamp) {
+        Signature last = lastSignature;
+        if (last != null && last.timestamp == timestamp)
+            return last;
+
+        Signature signature = new Signature(timestamp, computeSign(timestamp));
+        lastSignature = signature;
+        return signature;
+    }
+
+    private String computeSign(long timestamp) {
+        Workspace workspace = workspaces.get();
+        MessageDigest digest = workspace.digest;
+
+        digest.update(prefix);
+        int start = workspace.writeDecimal(timestamp);
+        digest.update(workspace.digits, start, workspace.digits.length - start);
+        digest.update(suffix);
+
+        try {
+            digest.digest(workspace.md, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            //输出缓冲长度固定为16, 不会发生
+            digest.reset();
+            throw new IllegalStateException(e.getMessage());
+        }
+
+        char[] hex = workspace.hex;
+        int k = 0;
+        for (byte b : workspace.md) {
+            hex[k++] = HEX_DIGITS[b >>> 4 & 0xf];
+            hex[k++] = HEX_DIGITS[b & 0xf];
+        }
+
+        return new String(hex);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return (MessageDigest) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            //部分provider不支持clone, 退回到重新获取
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 时间戳和对应的签名
+     */
+    public static class Signature {
+        private final long timestamp;
+        private final String sign;
+
+        Signature(long timestamp, String sign) {
+            this.timestamp = timestamp;
+            this.sign = sign;
+        }
+
+        /**
+         * @return  签名生成时间, 毫秒数
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return  32位16进制格式的签名
+         */
+        public String getSign() {
+            return sign;
+        }
+    }
+
+    /**
+     * 每个线程复用的签名工作区
+     */
+    private static class Workspace {
+        final MessageDigest digest;
+        final byte[] md = new byte[DIGEST_LENGTH];
+        final char[] hex = new char[DIGEST_LENGTH * 2];
+
+        //时间戳的十进制ASCII, 从数组末尾开始写入
+        final byte[] digits = new byte[20];
+
+        Workspace(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        /**
+         * @return  十进制结果在digits中的起始位置
+         */
+        int writeDecimal(long value) {
+            int pos = digits.length;
+            boolean negative = value < 0;
+            if (!negative)
+                value = -value;
+
+            //以负数计算, 兼容Long.MIN_VALUE
+            do {
+                digits[--pos] = (byte) ('0' - value % 10);
+                value /= 10;
+            } while (value != 0);
+
+            if (negative)
+                digits[--pos] = '-';
+
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * BCSingleFlight.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.async.BCResult;
+
+/**
+ * 合并相同的进行中请求
+ * 同一个key的请求在完成前只执行一次, 期间加入的BCCallback都会收到同一个结果实例, 调用方不应修改;
+ * 加入的BCFuture被取消时只是不再回调, 所有调用方都取消后才会中止网络请求
+ */
+public class BCSingleFlight {
+    private static final String TAG = "BCSingleFlight";
+
+    /**
+     * 需要执行的请求
+     */
+    abstract static class Call {
+        /**
+         * 在线程池中执行请求
+         * @return  请求结果
+         */
+        abstract BCResult execute();
+
+        /**
+         * @param errDetail 失败原因
+         * @return          请求无法执行时返回给所有调用方的结果
+         */
+        abstract BCResult failure(String errDetail);
+    }
+
+    private final Map<Object, Flight> flights = new HashMap<Object, Flight>();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * 执行请求, 相同key的请求正在进行时直接等待其结果
+     * @param key       请求的key, 需要实现equals和hashCode
+     * @param callback  回调入口
+     * @param executor  执行请求的线程池
+     * @param call      需要执行的请求
+     */
+    void execute(Object key, BCCallback callback, BCTaskExecutor executor, final Call call) {
+        final Flight flight;
+        synchronized (flights) {
+            //已经取消的请求不再加入, 重新发起
+            Flight existing = flights.get(key);
+            if (existing != null && !existing.cancelled) {
+                coalescedCount.incrementAndGet();
+                existing.join(callback);
+                return;
+            }
+
+            flight = new Flight(key);
+            flights.put(key, flight);
+            flight.join(callback);
+        }
+
+        try {
+            executor.execute(BCFuture.wrap(flight.future, new Runnable() {
+                @Override
+                public void run() {
+                    BCResult result;
+                    try {
+                        result = call.execute();
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "call failed: " + e.getMessage());
+                        result = call.failure(String.valueOf(e.getMessage()));
+                    } finally {
+                        remove(flight);
+                    }
+                    BCEvents.dispatch(flight.future, result);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            remove(flight);
+            flight.future.done(call.failure(e.getMessage()));
+        }
+    }
+
+    /**
+     * @return  加入了进行中的请求, 没有单独发起网络请求的次数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return  当前进行中的请求数
+     */
+    public int getInFlightCount() {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+
+    private void remove(Flight flight) {
+        synchronized (flights) {
+            removeLocked(flight);
+        }
+    }
+
+    private void removeLocked(Flight flight) {
+        if (flights.get(flight.key) == flight)
+            flights.remove(flight.key);
+    }
+
+    /**
+     * 一次进行中的请求
+     * 调用方的加入和离开都在flights锁内进行, 决定取消, 移除和标记取消是原子的,
+     * 不会有新的调用方加入正在被取消的请求
+     */
+    private class Flight {
+        final Object key;
+
+        //网络请求的取消动作绑定在这个BCFuture上
+        final BCFuture<BCResult> future = new BCFuture<BCResult>();
+
+        //以下由flights锁保护
+
+        //尚未取消的BCFuture调用方个数
+        private int activeFutures;
+
+        //有普通BCCallback调用方时不会中止请求
+        private boolean hasPlainCallback;
+
+        //所有调用方都已取消, 网络请求正在中止
+        private boolean cancelled;
+
+        Flight(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * 加入请求, 需要持有flights锁
+         */
+        void join(BCCallback callback) {
+            future.addCallback(callback);
+
+            if (!(callback instanceof BCFuture)) {
+                hasPlainCallback = true;
+                return;
+            }
+
+            //调用方的BCFuture只交给了这次请求, 取消动作由这里接管, 覆盖之前设置的动作
+            activeFutures++;
+            ((BCFuture<?>) callback).setCancelAction(new Runnable() {
+                @Override
+                public void run() {
+                    leave();
+                }
+            });
+        }
+
+        private void leave() {
+            synchronized (flights) {
+                if (--activeFutures > 0 || hasPlainCallback)
+                    return;
+
+                cancelled = true;
+                removeLocked(this);
+            }
+
+            future.cancel(true);
+        }
+    }
+}
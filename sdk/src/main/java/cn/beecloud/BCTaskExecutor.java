@@ -0,0 +1,175 @@
+/**
+ * BCTaskExecutor.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界线程池
+ * 线程数和等待队列长度都有上限, 线程为以BeeCloud-开头命名的守护线程, 空闲时自动回收;
+ * 队列已满时抛出RejectedExecutionException, 由调用方通过BCCallback返回错误;
+ * 线程数和队列长度都可以在运行中修改, 不需要替换线程池实例
+ */
+public class BCTaskExecutor extends ThreadPoolExecutor {
+
+    //空闲线程的存活时间, 以秒为单位
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final String name;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 构造函数
+     * @param name              线程池名称, 用于线程命名
+     * @param threads           最大线程数
+     * @param queueCapacity     等待队列长度
+     */
+    public BCTaskExecutor(final String name, int threads, int queueCapacity) {
+        super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ResizableQueue(queueCapacity),
+                new NamedThreadFactory(name));
+
+        this.name = name;
+        allowCoreThreadTimeOut(true);
+
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("BeeCloud " + name + " 线程池已满, 当前等待任务数: " +
+                        executor.getQueue().size());
+            }
+        });
+    }
+
+    /**
+     * @return  线程池名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return  等待执行的任务数
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return  因队列已满被拒绝的任务总数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return  true表示所有线程都在执行任务
+     */
+    public boolean isSaturated() {
+        return getActiveCount() >= getMaximumPoolSize();
+    }
+
+    /**
+     * 每个任务开始前清除上一个任务留下的事件关联
+     */
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        super.beforeExecute(thread, task);
+        BCEvents.clearParsed();
+    }
+
+    /**
+     * 修改最大线程数
+     * @param threads   最大线程数
+     */
+    public void setThreads(int threads) {
+        //先扩大上限再修改核心线程数, 避免core > max
+        if (threads > getMaximumPoolSize()) {
+            setMaximumPoolSize(threads);
+            setCorePoolSize(threads);
+        } else {
+            setCorePoolSize(threads);
+            setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * 修改等待队列长度
+     * 已经在等待的任务不受影响, 队列缩短后超出的部分执行完之前新任务会被拒绝
+     * @param queueCapacity     等待队列长度
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        ((ResizableQueue) getQueue()).setCapacity(queueCapacity);
+    }
+
+    /**
+     * @return  等待队列长度
+     */
+    public int getQueueCapacity() {
+        return ((ResizableQueue) getQueue()).getCapacity();
+    }
+
+    /**
+     * 长度可以修改的等待队列
+     * ThreadPoolExecutor只通过offer添加任务, 超出长度时返回false, 由RejectedExecutionHandler处理
+     */
+    private static class ResizableQueue extends LinkedBlockingQueue<Runnable> {
+        private volatile int capacity;
+
+        ResizableQueue(int capacity) {
+            setCapacity(capacity);
+        }
+
+        int getCapacity() {
+            return capacity;
+        }
+
+        void setCapacity(int capacity) {
+            if (capacity <= 0)
+                throw new IllegalArgumentException("queue capacity must be positive: " + capacity);
+            this.capacity = capacity;
+        }
+
+        //检查长度和添加需要是一个整体, 否则并发提交时会超出长度
+        @Override
+        public synchronized boolean offer(Runnable task) {
+            return size() < capacity && super.offer(task);
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, capacity - size());
+        }
+    }
+
+    /**
+     * 以BeeCloud-{name}-{序号}命名的守护线程
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String name) {
+            prefix = "BeeCloud-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * BCTimedSSLSocketFactory.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 记录TLS握手时间的SSLSocketFactory
+ * Android的HttpURLConnection先建立TCP连接, 再通过createSocket(Socket, ...)在其上创建SSLSocket并握手,
+ * 此时TCP连接已经完成, 从创建到HandshakeCompletedListener收到通知的时间即为握手时间;
+ * 只有新建连接时才会调用, 复用连接池中的连接时不记录;
+ * 其他创建方式包含了TCP连接的时间, 不做记录. 部分JVM异步通知握手完成, 此时可能记录不到
+ * 同一个delegate只包装一个实例, 连接池按SSLSocketFactory区分连接, 共享实例才能复用连接
+ */
+class BCTimedSSLSocketFactory extends SSLSocketFactory {
+
+    /**
+     * 一次连接的TCP连接完成时间和握手时间
+     */
+    static class Handshake {
+        //新建连接时TCP连接完成的System.nanoTime, 复用连接池中的连接时为0
+        volatile long connectedAt;
+        volatile long nanos;
+    }
+
+    private static final ThreadLocal<Handshake> current = new ThreadLocal<Handshake>();
+
+    private static volatile BCTimedSSLSocketFactory instance;
+
+    private final SSLSocketFactory delegate;
+
+    private BCTimedSSLSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param delegate  实际创建SSLSocket的SSLSocketFactory
+     * @return          包装后的共享实例
+     */
+    static SSLSocketFactory wrap(SSLSocketFactory delegate) {
+        if (delegate instanceof BCTimedSSLSocketFactory)
+            return delegate;
+
+        BCTimedSSLSocketFactory wrapped = instance;
+        if (wrapped == null || wrapped.delegate != delegate) {
+            wrapped = new BCTimedSSLSocketFactory(delegate);
+            instance = wrapped;
+        }
+        return wrapped;
+    }
+
+    /**
+     * 开始记录当前线程接下来建立的连接的握手时间
+     * @return  握手完成后记录的结果
+     */
+    static Handshake begin() {
+        Handshake handshake = new Handshake();
+        current.set(handshake);
+        return handshake;
+    }
+
+    /**
+     * 结束记录
+     */
+    static void end() {
+        current.remove();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        //传入的socket已经完成TCP连接
+        final Handshake handshake = current.get();
+        if (handshake != null)
+            handshake.connectedAt = System.nanoTime();
+
+        Socket created = delegate.createSocket(socket, host, port, autoClose);
+
+        if (handshake != null && created instanceof SSLSocket) {
+            final long start = System.nanoTime();
+            ((SSLSocket) created).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                @Override
+                public void handshakeCompleted(HandshakeCompletedEvent event) {
+                    handshake.nanos = System.nanoTime() - start;
+                    event.getSocket().removeHandshakeCompletedListener(this);
+                }
+            });
+        }
+        return created;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return delegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * BCUrlConnectionTransport.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import android.util.Log;
+
+/**
+ * 基于HttpURLConnection的BCHttpTransport, SDK默认使用
+ * 连接由系统的keep-alive连接池复用, 返回内容读完并关闭后连接才会回到连接池;
+ * 请求时声明接受gzip和deflate压缩, 压缩的内容原样返回, 由BCHttpClientUtil边读边解压
+ * 连接池由系统管理, BeeCloud.setConnectionPoolSize和setConnectionIdleTimeout
+ * 会映射到系统属性http.maxConnections和http.keepAliveDuration, 见applyPoolSettings
+ */
+public class BCUrlConnectionTransport implements BCHttpTransport {
+    private static final String TAG = "BCUrlConnectionTransport";
+
+    //关闭时最多丢弃的未读取字节数, 超过时直接断开连接
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    //是否已经通过HttpURLConnection发送过请求, 之后系统连接池的设置不一定生效
+    private static volatile boolean connected;
+
+    /**
+     * 将连接池设置映射到HttpURLConnection使用的系统属性
+     * http.maxConnections为保留的空闲连接数, http.keepAliveDuration为Android上空闲连接的保留时间;
+     * 系统在创建连接池时读取这些属性, 已经发送过请求时只会输出警告, 设置可能要到进程重启后才生效
+     * 系统属性对整个应用的HttpURLConnection都有效
+     * @param maxIdlePerHost    每个主机保留的空闲连接数, 不大于0时不修改
+     * @param idleTimeout       空闲连接的保留时间, 单位为毫秒, 不大于0时不修改
+     */
+    static void applyPoolSettings(int maxIdlePerHost, long idleTimeout) {
+        if (maxIdlePerHost > 0)
+            System.setProperty("http.maxConnections", String.valueOf(maxIdlePerHost));
+        if (idleTimeout > 0)
+            System.setProperty("http.keepAliveDuration", String.valueOf(idleTimeout));
+
+        if (connected)
+            Log.w(TAG, "HttpURLConnection connection pool already in use, "
+                    + "pool settings may not take effect until the process restarts");
+    }
+
+    @Override
+    public BCHttpResponse execute(BCHttpRequest request) throws IOException {
+        connected = true;
+        final HttpURLConnection connection = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+
+        request.setAbortAction(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        });
+
+        try {
+            connection.setRequestMethod(request.getMethod());
+            connection.setUseCaches(false);
+
+            if (request.getTimeout() > 0) {
+                connection.setConnectTimeout(request.getTimeout());
+                connection.setReadTimeout(request.getTimeout());
+            }
+
+            //显式声明时系统不再自动解压, 由BCContentEncoding统一处理
+            BCContentEncoding.acceptCompressed(request);
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+                connection.setRequestProperty(header.getKey(), header.getValue());
+
+            //请求的设置都必须在connect之前完成
+            BCHttpRequest.Body body = request.getBody();
+            if (body != null) {
+                connection.setDoOutput(true);
+                if (body.getMediaType() != null)
+                    connection.setRequestProperty("Content-Type", body.getMediaType());
+
+                long length = body.getContentLength();
+                if (length >= 0 && length <= Integer.MAX_VALUE)
+                    connection.setFixedLengthStreamingMode((int) length);
+                else
+                    connection.setChunkedStreamingMode(0);
+            }
+
+            boolean timed = BCEvents.getListener() != null;
+            if (timed && connection instanceof HttpsURLConnection)
+                connectTimed(request, (HttpsURLConnection) connection);
+
+            long writeStart = System.nanoTime();
+            if (body != null) {
+                OutputStream out = connection.getOutputStream();
+                try {
+                    body.writeTo(out);
+                } finally {
+                    out.close();
+                }
+
+                if (timed)
+                    BCEvents.reportPhase(request, BCEventListener.Phase.REQUEST_WRITE,
+                            System.nanoTime() - writeStart);
+            }
+
+            long responseStart = System.nanoTime();
+            int statusCode = connection.getResponseCode();
+            if (timed)
+                BCEvents.reportPhase(request, BCEventListener.Phase.TIME_TO_FIRST_BYTE,
+                        System.nanoTime() - responseStart);
+
+            Map<String, String> headers = new HashMap<String, String>();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                List<String> values = header.getValue();
+                if (header.getKey() != null && values != null && !values.isEmpty())
+                    headers.put(header.getKey().toLowerCase(Locale.US), values.get(values.size() - 1));
+            }
+
+            InputStream content = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (content == null)
+                return new BCHttpResponse(statusCode, headers, null);
+
+            return new BCHttpResponse(statusCode, headers, new ReleasingInputStream(content, connection));
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        } catch (RuntimeException e) {
+            //部分系统版本在连接被abort时抛出运行时异常
+            connection.disconnect();
+            throw new IOException(String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * 计时https的建立连接和TLS握手
+     * 只有新建连接时HttpURLConnection才会通过共享的BCTimedSSLSocketFactory创建SSLSocket,
+     * 由此得知TCP连接完成的时间和握手时间; 复用连接池中的连接时不报告这两个阶段.
+     * 域名解析包含在连接时间内, 不单独报告, 也不会为了计时而额外解析
+     */
+    private static void connectTimed(BCHttpRequest request, HttpsURLConnection connection) throws IOException {
+        connection.setSSLSocketFactory(BCTimedSSLSocketFactory.wrap(connection.getSSLSocketFactory()));
+        BCTimedSSLSocketFactory.Handshake handshake = BCTimedSSLSocketFactory.begin();
+
+        long connectStart = System.nanoTime();
+        try {
+            connection.connect();
+        } finally {
+            BCTimedSSLSocketFactory.end();
+        }
+
+        if (handshake.connectedAt == 0)
+            return;
+
+        BCEvents.reportPhase(request, BCEventListener.Phase.CONNECT, handshake.connectedAt - connectStart);
+        if (handshake.nanos > 0)
+            BCEvents.reportPhase(request, BCEventListener.Phase.TLS_HANDSHAKE, handshake.nanos);
+    }
+
+    /**
+     * 连接由系统管理, 不需要释放
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * 关闭时读完剩余内容, 使连接可以复用; 剩余内容过多或者读取失败时断开连接
+     */
+    private static class ReleasingInputStream extends FilterInputStream {
+        private final HttpURLConnection connection;
+        private boolean closed;
+
+        ReleasingInputStream(InputStream in, HttpURLConnection connection) {
+            super(in);
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+
+            try {
+                byte[] buffer = new byte[1024];
+                int drained = 0;
+                int read;
+                while (drained <= MAX_DRAIN_BYTES && (read = in.read(buffer)) != -1)
+                    drained += read;
+
+                if (drained > MAX_DRAIN_BYTES)
+                    connection.disconnect();
+            } catch (IOException e) {
+                connection.disconnect();
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@
  */
 package cn.beecloud;
 
+import android.graphics.Bitmap;
+
 /**
  * 全局参数配置类
  * 建议在主activity中初始化
@@ -27,6 +29,39 @@ public class BeeCloud {
         BCCache instance = BCCache.getInstance();
         instance.appId = appId;
         instance.appSecret = appSecret;
+        BCQuery.getInstance().clearCache();
+    }
+
+    /**
+     * 替换SDK请求的BeeCloud主机, 仅用于测试环境, 比如本地的mock server
+     * 只在包内可见, 正式环境无法调用
+     *
+     * @param hosts 主机地址, 例如http://127.0.0.1:8080, 不包含/1/等路径; 不传时恢复为BeeCloud的主机
+     */
+    static void setHosts(String... hosts) {
+        BCHttpClientUtil.setHosts(hosts);
+    }
+
+    /**
+     * 替换网络传输层, 默认为基于HttpURLConnection的BCUrlConnectionTransport.
+     * 可以设置为BCApacheHttpTransport恢复之前基于Apache HttpClient的实现,
+     * 或者设置为自己实现的BCHttpTransport, 比如基于OkHttp.
+     * 建议在初始化时调用, 之前的传输层会被关闭
+     *
+     * @param transport BCHttpTransport实例, null表示恢复为默认实现
+     */
+    public static void setHttpTransport(BCHttpTransport transport) {
+        BCHttpClientUtil.setTransport(transport);
+    }
+
+    /**
+     * 设置网络请求生命周期的通知, 包括DNS, 连接, TLS握手, 发送, 首字节, 读取, 解析和回调各阶段的耗时.
+     * 默认不设置, 不设置时不记录任何时间
+     *
+     * @param listener  BCEventListener实例, null表示关闭
+     */
+    public static void setEventListener(BCEventListener listener) {
+        BCEvents.setListener(listener);
     }
 
     /**
@@ -37,4 +72,148 @@ public class BeeCloud {
     public static void setNetworkTimeout(Integer networkTimeout) {
         BCCache.getInstance().networkTimeout = networkTimeout;
     }
+
+    /**
+     * 修改连接池大小, 默认最多16个连接, 每个主机最多4个连接.
+     * 使用默认的BCUrlConnectionTransport时maxPerHost映射为系统属性http.maxConnections,
+     * 对整个应用的HttpURLConnection有效, 并且只在第一次请求前调用时生效.
+     * 建议在初始化时调用, 调用后会关闭当前连接池中的连接
+     *
+     * @param maxTotal      连接池最大连接数
+     * @param maxPerHost    每个主机的最大连接数
+     */
+    public static void setConnectionPoolSize(int maxTotal, int maxPerHost) {
+        BCCache instance = BCCache.getInstance();
+        instance.connectionPoolMaxTotal = maxTotal;
+        instance.connectionPoolMaxPerRoute = maxPerHost;
+        BCHttpClientUtil.applyPoolSettings(maxPerHost, 0);
+        BCHttpClientUtil.shutdown();
+    }
+
+    /**
+     * 修改空闲连接在连接池中的保留时间，单位是毫秒，默认为30秒.
+     * 使用默认的BCUrlConnectionTransport时映射为系统属性http.keepAliveDuration,
+     * 对整个应用的HttpURLConnection有效, 并且只在第一次请求前调用时生效.
+     *
+     * @param idleTimeout   保留时间，单位为毫秒
+     */
+    public static void setConnectionIdleTimeout(long idleTimeout) {
+        BCCache.getInstance().connectionIdleTimeout = idleTimeout;
+        BCHttpClientUtil.applyPoolSettings(0, idleTimeout);
+    }
+
+    /**
+     * 修改查询请求的重试设置, 默认最多尝试3次, 单次超时4秒.
+     * 查询失败时会换到其他主机重试, 所有尝试都在networkTimeout内完成
+     *
+     * @param maxAttempts       最大尝试次数, 包括首次请求, 1表示不重试
+     * @param attemptTimeout    单次尝试的超时时间，单位为毫秒
+     */
+    public static void setQueryRetry(int maxAttempts, int attemptTimeout) {
+        BCCache instance = BCCache.getInstance();
+        instance.queryMaxAttempts = maxAttempts;
+        instance.queryAttemptTimeout = attemptTimeout;
+    }
+
+    /**
+     * 设置支付订单和退款订单查询的对冲请求, 默认关闭.
+     * 开启后, 如果首个主机在最近查询延迟的percentile分位时间内没有返回,
+     * 会向另一个主机发送相同的查询, 采用先返回的结果并取消另一个请求
+     *
+     * @param enabled       true表示开启
+     * @param percentile    等待时间对应的延迟分位, (0, 1)之间, 例如0.95
+     */
+    public static void setQueryHedging(boolean enabled, double percentile) {
+        BCCache instance = BCCache.getInstance();
+        instance.queryHedgingEnabled = enabled;
+        instance.queryHedgingPercentile = percentile;
+    }
+
+    /**
+     * 设置是否合并相同的进行中查询, 默认关闭.
+     * 开启后, 条件完全相同的异步查询在前一个完成前只发送一次网络请求, 所有回调收到同一个结果实例,
+     * 回调中不应修改结果(比如结果中的订单列表)
+     *
+     * @param enabled   true表示开启
+     */
+    public static void setQueryCoalescing(boolean enabled) {
+        BCCache.getInstance().queryCoalescingEnabled = enabled;
+    }
+
+    /**
+     * 设置订单查询结果的缓存, 默认关闭.
+     * 相同条件的查询在有效期内直接返回缓存的结果, 不发送网络请求;
+     * 缓存按最近使用淘汰, 对某个订单发起的支付结束后, 与其相关的缓存会被清除
+     *
+     * @param maxOrders         缓存大小, 以缓存的订单条数计算, 0表示关闭
+     * @param ttl               订单查询结果的有效期, 单位为毫秒
+     * @param closedWindowTtl   结束时间在1小时之前的历史时间段内的查询结果的有效期, 单位为毫秒
+     * @param refundStatusTtl   退款状态查询结果的有效期, 单位为毫秒, 0表示不缓存
+     */
+    public static void setQueryCache(int maxOrders, long ttl, long closedWindowTtl, long refundStatusTtl) {
+        BCCache instance = BCCache.getInstance();
+        instance.queryCacheMaxOrders = maxOrders;
+        instance.queryCacheTtl = ttl;
+        instance.queryCacheClosedWindowTtl = closedWindowTtl;
+        instance.refundStatusCacheTtl = refundStatusTtl;
+        BCQuery.getInstance().clearCache();
+    }
+
+    /**
+     * 修改线程池大小, 默认支付2个线程, 查询4个线程.
+     * 支付和查询使用不同的线程池, 大量查询不会影响支付请求.
+     * 查询的对冲请求和BCOrderIterator的预取也在查询线程池中执行, 与查询请求共用queryThreads
+     *
+     * @param payThreads    支付和生成二维码请求的最大线程数
+     * @param queryThreads  查询请求的最大线程数
+     */
+    public static void setThreadPoolSize(int payThreads, int queryThreads) {
+        BCCache.payExecutorService.setThreads(payThreads);
+        BCCache.queryExecutorService.setThreads(queryThreads);
+    }
+
+    /**
+     * 修改线程池等待队列的长度, 默认支付16, 查询64.
+     * 队列已满时新的请求会直接通过BCCallback返回失败.
+     * 已经在等待的请求不受影响, 队列缩短时超出的部分执行完之前新的请求会直接返回失败
+     *
+     * @param payQueueCapacity      支付和生成二维码请求的等待队列长度
+     * @param queryQueueCapacity    查询请求的等待队列长度
+     */
+    public static void setThreadPoolQueueCapacity(int payQueueCapacity, int queryQueueCapacity) {
+        BCCache.payExecutorService.setQueueCapacity(payQueueCapacity);
+        BCCache.queryExecutorService.setQueueCapacity(queryQueueCapacity);
+    }
+
+    /**
+     * 设置生成二维码图片使用的Bitmap.Config, 默认ARGB_8888.
+     * RGB_565占用一半内存, 不支持透明背景; ALPHA_8只占用1/4内存, 只保留颜色的透明度,
+     * 此时生成的二维码背景透明, 显示时由Paint决定前景色
+     *
+     * @param config    Bitmap.Config
+     */
+    public static void setQRCodeBitmapConfig(Bitmap.Config config) {
+        BCCache.getInstance().qrCodeBitmapConfig = config;
+    }
+
+    /**
+     * 设置生成的二维码图片的缓存, 默认关闭.
+     * 内容, 大小, 留边, 颜色和Bitmap.Config都相同的二维码直接返回缓存的Bitmap, 比如屏幕旋转或者重新打开待支付的订单;
+     * 缓存按最近使用淘汰, 被淘汰的Bitmap不会被recycle, 不再使用后由GC回收;
+     * 开启后不应自己recycle生成的Bitmap, 确定不再显示时可以调用BCPay.getQRCodeCache().clear()释放
+     *
+     * @param maxBytes  缓存大小, 以Bitmap占用的字节数计算, 0表示关闭并清除已缓存的图片
+     */
+    public static void setQRCodeCache(long maxBytes) {
+        BCCache.getInstance().qrCodeCacheMaxBytes = maxBytes;
+        BCPay.getQRCodeCache().trimToSize(maxBytes);
+    }
+
+    /**
+     * 关闭网络连接池, 建议在应用退出时调用
+     * 之后发起的请求会重新建立连接
+     */
+    public static void shutdown() {
+        BCHttpClientUtil.shutdown();
+    }
 }
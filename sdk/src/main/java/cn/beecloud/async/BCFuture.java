@@ -0,0 +1,256 @@
+/**
+ * BCFuture.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 异步操作的结果句柄
+ * 可以阻塞等待结果, 设置超时, 取消请求, 或者同时等待多个操作;
+ * 取消时会中止正在进行的网络请求
+ * 本身也是一个BCCallback, 操作完成时由SDK调用done
+ *
+ * @param <T>   结果类型
+ */
+public class BCFuture<T extends BCResult> implements Future<T>, BCCallback {
+
+    //当前线程正在执行的任务对应的BCFuture
+    private static final ThreadLocal<BCFuture<?>> current = new ThreadLocal<BCFuture<?>>();
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private T result;
+    private boolean completed;
+    private boolean cancelled;
+
+    //取消时执行, 用于中止网络请求
+    private Runnable cancelAction;
+
+    private List<BCCallback> callbacks;
+
+    /**
+     * 操作完成时由SDK调用, 只有第一次调用有效
+     * @param result    包含支付或者查询结果信息
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void done(BCResult result) {
+        List<BCCallback> toNotify;
+        synchronized (this) {
+            if (completed || cancelled)
+                return;
+
+            this.result = (T) result;
+            completed = true;
+            cancelAction = null;
+
+            toNotify = callbacks;
+            callbacks = null;
+        }
+
+        latch.countDown();
+
+        if (toNotify != null) {
+            for (BCCallback callback : toNotify)
+                callback.done(result);
+        }
+    }
+
+    /**
+     * 取消操作, 并中止正在进行的网络请求
+     * 取消后不会再回调通过addCallback添加的BCCallback
+     * @param mayInterruptIfRunning     不使用, 网络请求总是会被中止
+     * @return                          false表示操作已经完成或者已经取消
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Runnable action;
+        synchronized (this) {
+            if (completed || cancelled)
+                return false;
+
+            cancelled = true;
+            action = cancelAction;
+            cancelAction = null;
+            callbacks = null;
+        }
+
+        latch.countDown();
+
+        if (action != null)
+            action.run();
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return completed || cancelled;
+    }
+
+    /**
+     * 阻塞等待结果
+     * @return                          操作结果
+     * @throws InterruptedException     等待被中断
+     * @throws CancellationException    操作已经被取消
+     */
+    @Override
+    public T get() throws InterruptedException {
+        latch.await();
+        return getResult();
+    }
+
+    /**
+     * 阻塞等待结果, 最多等待timeout
+     * 超时后操作仍在进行, 不再需要时请调用cancel
+     * @param timeout                   等待时间
+     * @param unit                      时间单位
+     * @return                          操作结果
+     * @throws InterruptedException     等待被中断
+     * @throws TimeoutException         超时
+     * @throws CancellationException    操作已经被取消
+     */
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!latch.await(timeout, unit))
+            throw new TimeoutException();
+        return getResult();
+    }
+
+    private synchronized T getResult() {
+        if (cancelled)
+            throw new CancellationException();
+        return result;
+    }
+
+    /**
+     * 添加完成时的回调, 如果已经完成则立即在当前线程回调
+     * @param callback  回调函数
+     * @return          当前BCFuture
+     */
+    public BCFuture<T> addCallback(BCCallback callback) {
+        T finished;
+        synchronized (this) {
+            if (cancelled)
+                return this;
+
+            if (!completed) {
+                if (callbacks == null)
+                    callbacks = new ArrayList<BCCallback>(2);
+                callbacks.add(callback);
+                return this;
+            }
+
+            finished = result;
+        }
+
+        callback.done(finished);
+        return this;
+    }
+
+    /**
+     * 设置取消时执行的操作, 由SDK内部调用, 应用不应调用
+     * 同时只保留一个操作, 新设置的操作直接替换之前的操作, 被替换的操作不会执行:
+     * BCFuture交给SDK后, 发起网络请求, 对冲请求或者加入合并的查询时都会设置SDK自己的操作,
+     * 应用事先设置的操作会被覆盖; 需要在完成时得到通知请使用addCallback
+     * 如果已经被取消则立即执行
+     * @param action    比如中止当前的网络请求, 为null表示清除
+     */
+    public void setCancelAction(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelAction = action;
+                return;
+            }
+        }
+
+        if (action != null)
+            action.run();
+    }
+
+    /**
+     * @return  当前线程正在执行的任务对应的BCFuture, 没有则为null
+     */
+    public static BCFuture<?> current() {
+        return current.get();
+    }
+
+    /**
+     * 如果callback是BCFuture, 在执行task期间将其绑定到执行线程,
+     * 使网络请求可以被cancel中止; 已经取消的任务不再执行
+     * @param callback  任务完成时的回调
+     * @param task      需要执行的任务
+     * @return          包装后的任务
+     */
+    public static Runnable wrap(BCCallback callback, final Runnable task) {
+        if (!(callback instanceof BCFuture))
+            return task;
+
+        final BCFuture<?> future = (BCFuture<?>) callback;
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled())
+                    return;
+
+                current.set(future);
+                try {
+                    task.run();
+                } finally {
+                    current.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * 等待多个操作全部完成, 所有操作共用一个超时时间
+     * @param timeout                   等待时间
+     * @param unit                      时间单位
+     * @param futures                   需要等待的操作
+     * @param <T>                       结果类型
+     * @return                          按照参数顺序排列的结果, 被取消的操作对应null
+     * @throws InterruptedException     等待被中断
+     * @throws TimeoutException         超时, 未完成的操作仍在进行
+     */
+    public static <T extends BCResult> List<T> getAll(long timeout, TimeUnit unit,
+                                                      List<? extends BCFuture<? extends T>> futures)
+            throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<T> results = new ArrayList<T>(futures.size());
+
+        for (BCFuture<? extends T> future : futures) {
+            long remaining = deadline - System.nanoTime();
+            try {
+                results.add(future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS));
+            } catch (CancellationException e) {
+                results.add(null);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * 取消多个操作
+     * @param futures   需要取消的操作
+     */
+    public static void cancelAll(List<? extends BCFuture<?>> futures) {
+        for (BCFuture<?> future : futures)
+            future.cancel(true);
+    }
+}
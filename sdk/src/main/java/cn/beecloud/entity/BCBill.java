@@ -6,6 +6,12 @@
  */
 package cn.beecloud.entity;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -134,4 +140,101 @@ public class BCBill {
                 bill.createdTime = ((Double) billMap.get("created_time")).longValue();
         }
     }
+
+    /**
+     * 从JsonReader直接读取BCBill实例
+     * @param reader    指向bill对象的JsonReader
+     * @return          BCBill实例
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static BCBill readBill(JsonReader reader) throws IOException {
+        BCBill bill = new BCBill();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!readBillField(reader.nextName(), reader, bill, false))
+                reader.skipValue();
+        }
+        reader.endObject();
+
+        if (bill.payResult == null)
+            bill.payResult = Boolean.FALSE;
+
+        return bill;
+    }
+
+    /**
+     * 从JsonReader读取BCBill的字段
+     * @param name      当前字段名
+     * @param reader    指向当前字段值的JsonReader
+     * @param bill      需要填充的BCBill
+     * @param refund    是否用于退款
+     * @return          true表示已经读取该字段
+     * @throws IOException  读取失败或者json格式错误
+     */
+    protected static boolean readBillField(String name, JsonReader reader, BCBill bill,
+                                           boolean refund) throws IOException {
+        if ("bill_no".equals(name)) {
+            bill.billNum = BCJsonCodec.nextStringOrNull(reader);
+        } else if ("total_fee".equals(name)) {
+            bill.totalFee = BCJsonCodec.nextIntegerOrNull(reader);
+        } else if ("channel".equals(name)) {
+            bill.channel = BCJsonCodec.nextStringOrNull(reader);
+        } else if ("title".equals(name)) {
+            bill.title = BCJsonCodec.nextStringOrNull(reader);
+        } else if (!refund && "spay_result".equals(name)) {
+            bill.payResult = BCJsonCodec.nextBooleanOrNull(reader);
+        } else if (!refund && "created_time".equals(name)) {
+            bill.createdTime = BCJsonCodec.nextLongOrNull(reader);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 将BCBill的字段写入JsonWriter, 字段名与服务端一致
+     * @param writer    JsonWriter, 当前位于对象内部
+     * @param bill      需要写入的BCBill
+     * @param refund    是否用于退款
+     * @throws IOException  写入失败
+     */
+    protected static void writeBillFields(JsonWriter writer, BCBill bill, boolean refund) throws IOException {
+        writer.name("bill_no").value(bill.billNum);
+        writer.name("total_fee").value(bill.totalFee);
+        writer.name("channel").value(bill.channel);
+        writer.name("title").value(bill.title);
+
+        if (!refund) {
+            writer.name("spay_result");
+            BCJsonCodec.writeBooleanOrNull(writer, bill.payResult);
+            writer.name("created_time").value(bill.createdTime);
+        }
+    }
+
+    /**
+     * BCBill的json读写
+     */
+    static class JsonAdapter extends TypeAdapter<BCBill> {
+        @Override
+        public void write(JsonWriter writer, BCBill bill) throws IOException {
+            if (bill == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writeBillFields(writer, bill, false);
+            writer.endObject();
+        }
+
+        @Override
+        public BCBill read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return readBill(reader);
+        }
+    }
 }
@@ -0,0 +1,333 @@
+/**
+ * BCJsonBuffer.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.entity;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+import cn.beecloud.BCHttpRequest;
+
+/**
+ * 每个线程复用的json字节缓冲
+ * 请求参数直接以UTF-8编码写入字节数组, 不生成中间的Map和String,
+ * 并通过asBody发送, 发送时也不再复制
+ * 缓冲在同一线程的下一次obtain时被覆盖, 必须在当前线程发送完请求后才能再次使用
+ */
+public class BCJsonBuffer {
+
+    //初始容量, 足够容纳一般的支付请求
+    private static final int INITIAL_CAPACITY = 1024;
+
+    //超过该容量的缓冲在下一次使用时释放, 避免线程长期持有大数组
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private static final ThreadLocal<BCJsonBuffer> buffers = new ThreadLocal<BCJsonBuffer>() {
+        @Override
+        protected BCJsonBuffer initialValue() {
+            return new BCJsonBuffer();
+        }
+    };
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int count;
+
+    //当前对象是否还没有字段, 用于决定是否写入逗号
+    private boolean firstField;
+
+    //long转十进制时的临时数组
+    private final byte[] digits = new byte[20];
+
+    private final JsonEntity entity = new JsonEntity();
+
+    private BCJsonBuffer() {}
+
+    /**
+     * 获取当前线程的缓冲, 并清空之前的内容
+     * @return  当前线程的BCJsonBuffer
+     */
+    public static BCJsonBuffer obtain() {
+        BCJsonBuffer buffer = buffers.get();
+        if (buffer.bytes.length > MAX_RETAINED_CAPACITY)
+            buffer.bytes = new byte[INITIAL_CAPACITY];
+
+        buffer.count = 0;
+        buffer.firstField = true;
+        return buffer;
+    }
+
+    /**
+     * 开始一个json对象
+     * @return  当前BCJsonBuffer
+     */
+    public BCJsonBuffer beginObject() {
+        write('{');
+        firstField = true;
+        return this;
+    }
+
+    /**
+     * 结束当前json对象
+     * @return  当前BCJsonBuffer
+     */
+    public BCJsonBuffer endObject() {
+        write('}');
+        firstField = false;
+        return this;
+    }
+
+    /**
+     * 开始一个值为json对象的字段, 之后需要调用endObject
+     * @param name  字段名
+     * @return      当前BCJsonBuffer
+     */
+    public BCJsonBuffer beginObjectField(String name) {
+        writeName(name);
+        return beginObject();
+    }
+
+    /**
+     * 写入字符串字段, value为null时不写入该字段
+     * @param name  字段名
+     * @param value 字段值
+     * @return      当前BCJsonBuffer
+     */
+    public BCJsonBuffer field(String name, String value) {
+        if (value != null) {
+            writeName(name);
+            writeString(value);
+        }
+        return this;
+    }
+
+    /**
+     * 写入整数字段, value为null时不写入该字段
+     * @param name  字段名
+     * @param value 字段值, 只支持整数类型
+     * @return      当前BCJsonBuffer
+     */
+    public BCJsonBuffer field(String name, Number value) {
+        if (value != null) {
+            writeName(name);
+            writeLong(value.longValue());
+        }
+        return this;
+    }
+
+    /**
+     * 将map作为json对象写入, map为null时不写入该字段
+     * @param name  字段名
+     * @param map   字段值
+     * @return      当前BCJsonBuffer
+     */
+    public BCJsonBuffer field(String name, Map<String, String> map) {
+        if (map != null) {
+            beginObjectField(name);
+            for (Map.Entry<String, String> entry : map.entrySet())
+                field(entry.getKey(), entry.getValue());
+            endObject();
+        }
+        return this;
+    }
+
+    /**
+     * @return  已写入的字节数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 以json的形式发送当前缓冲内容, 返回的实例同样被当前线程复用
+     * @return  Content-Type为application/json的请求体
+     */
+    public BCHttpRequest.Body asBody() {
+        return entity;
+    }
+
+    /**
+     * @return  当前内容的UTF-8解码, 用于调试
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(bytes, 0, count, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+
+    private void writeName(String name) {
+        if (!firstField)
+            write(',');
+        firstField = false;
+
+        writeString(name);
+        write(':');
+    }
+
+    /**
+     * 写入带引号的字符串, 与Gson默认设置一样转义HTML字符
+     */
+    private void writeString(String value) {
+        write('"');
+
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c == '\n') {
+                write('\\');
+                write('n');
+            } else if (c == '\r') {
+                write('\\');
+                write('r');
+            } else if (c == '\t') {
+                write('\\');
+                write('t');
+            } else if (c == '\b') {
+                write('\\');
+                write('b');
+            } else if (c == '\f') {
+                write('\\');
+                write('f');
+            } else if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'' ||
+                    c == 0x2028 || c == 0x2029) {
+                writeUnicodeEscape(c);
+            } else if (c < 0x80) {
+                write(c);
+            } else if (c < 0x800) {
+                write(0xc0 | (c >> 6));
+                write(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write(0xf0 | (codePoint >> 18));
+                write(0x80 | ((codePoint >> 12) & 0x3f));
+                write(0x80 | ((codePoint >> 6) & 0x3f));
+                write(0x80 | (codePoint & 0x3f));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                //不成对的代理字符, 与String.getBytes一致替换为?
+                write('?');
+            } else {
+                write(0xe0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3f));
+                write(0x80 | (c & 0x3f));
+            }
+        }
+
+        write('"');
+    }
+
+    private void writeUnicodeEscape(char c) {
+        write('\\');
+        write('u');
+        write(HEX_DIGITS[(c >> 12) & 0xf]);
+        write(HEX_DIGITS[(c >> 8) & 0xf]);
+        write(HEX_DIGITS[(c >> 4) & 0xf]);
+        write(HEX_DIGITS[c & 0xf]);
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        ensureCapacity(length);
+        while (length > 0)
+            bytes[count++] = digits[--length];
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++)
+            bytes[count++] = (byte) value.charAt(i);
+    }
+
+    private void write(int b) {
+        ensureCapacity(1);
+        bytes[count++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra <= bytes.length)
+            return;
+
+        byte[] grown = new byte[Math.max(bytes.length * 2, count + extra)];
+        System.arraycopy(bytes, 0, grown, 0, count);
+        bytes = grown;
+    }
+
+    /**
+     * 直接发送缓冲内容的请求体, 同时也是HttpEntity, BCApacheHttpTransport可以直接发送
+     * Content-Type与之前StringEntity发送的保持一致, 内容为UTF-8编码
+     */
+    private class JsonEntity extends AbstractHttpEntity implements BCHttpRequest.Body {
+
+        private static final String MEDIA_TYPE = "application/json";
+
+        JsonEntity() {
+            setContentType(MEDIA_TYPE);
+        }
+
+        @Override
+        public String getMediaType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return count;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return new ByteArrayInputStream(bytes, 0, count);
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            if (outstream == null)
+                throw new IllegalArgumentException("Output stream may not be null");
+
+            outstream.write(bytes, 0, count);
+            outstream.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
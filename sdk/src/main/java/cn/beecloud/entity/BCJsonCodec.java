@@ -0,0 +1,153 @@
+/**
+ * BCJsonCodec.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.entity;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * 请求和结果的json编解码
+ * 共享一个线程安全的Gson实例, 实体类通过手写的TypeAdapter直接读写字段,
+ * 不依赖反射, 也不经过中间的Map; 请求参数只需要序列化, 通过WriteAdapter写入
+ */
+public class BCJsonCodec {
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(BCBill.class, new BCBill.JsonAdapter())
+            .registerTypeAdapter(BCRefundOrder.class, new BCRefundOrder.JsonAdapter())
+            .registerTypeAdapter(BCQueryOrderResult.class, new BCQueryOrderResult.JsonAdapter())
+            .registerTypeAdapter(BCQueryRefundStatusResult.class, new BCQueryRefundStatusResult.JsonAdapter())
+            .registerTypeAdapter(BCQRCodeResult.class, new BCQRCodeResult.JsonAdapter())
+            .create();
+
+    private BCJsonCodec() {}
+
+    /**
+     * @return  共享的Gson实例, 线程安全, 请勿在每次请求时新建Gson
+     */
+    public static Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * 只写不读的json序列化, 用于请求参数
+     * 不注册到Gson, 因此这些类型不能通过Gson反序列化
+     * @param <T>   序列化的类型
+     */
+    abstract static class WriteAdapter<T> {
+
+        /**
+         * @param writer    JsonWriter
+         * @param value     序列化的实例, 不为null
+         * @throws IOException  写入失败
+         */
+        abstract void write(JsonWriter writer, T value) throws IOException;
+
+        /**
+         * 与Gson.toJson的默认设置一致: 转义html字符, 不输出值为null的字段
+         * @param value     序列化的实例, 不为null
+         * @return          json串
+         */
+        final String toJson(T value) {
+            StringWriter out = new StringWriter();
+            JsonWriter writer = new JsonWriter(out);
+            writer.setHtmlSafe(true);
+            writer.setSerializeNulls(false);
+
+            try {
+                write(writer, value);
+                writer.close();
+            } catch (IOException e) {
+                throw new JsonIOException(e);
+            }
+            return out.toString();
+        }
+    }
+
+    /**
+     * @param reader    指向字符串或者null的JsonReader
+     * @return          字符串, json为null时返回null
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * @param reader    指向数字或者null的JsonReader
+     * @return          整数, json为null时返回null
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static Integer nextIntegerOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+
+    /**
+     * @param reader    指向数字或者null的JsonReader
+     * @return          长整数, json为null时返回null
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static Long nextLongOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextLong();
+    }
+
+    /**
+     * @param reader    指向布尔值或者null的JsonReader
+     * @return          布尔值, json为null时返回null
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static Boolean nextBooleanOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextBoolean();
+    }
+
+    /**
+     * 将通用的结果字段写入JsonWriter
+     * @param writer    JsonWriter, 当前位于对象内部
+     * @param result    结果实例
+     * @throws IOException  写入失败
+     */
+    static void writeCommonFields(JsonWriter writer, BCRestfulCommonResult result) throws IOException {
+        writer.name("result_code").value(result.resultCode);
+        writer.name("result_msg").value(result.resultMsg);
+        writer.name("err_detail").value(result.errDetail);
+    }
+
+    /**
+     * 写入可能为null的布尔值
+     * @param writer    JsonWriter, 当前位于字段名之后
+     * @param value     布尔值, 为null时写入null
+     * @throws IOException  写入失败
+     */
+    public static void writeBooleanOrNull(JsonWriter writer, Boolean value) throws IOException {
+        if (value == null)
+            writer.nullValue();
+        else
+            writer.value(value.booleanValue());
+    }
+}
@@ -10,6 +10,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import cn.beecloud.BCException;
+import cn.beecloud.BCHttpRequest;
 
 /**
  * 支付参数类
@@ -77,6 +78,38 @@ public class BCPayReqParams extends BCReqParams {
         super(channel, reqType);
     }
 
+    /**
+     * 将实例直接写入当前线程复用的字节缓冲, 用于以json方式post请求
+     * 字段与transToBillReqMapParams一致, 序列化过程不生成中间的Map和String
+     * 返回的请求体在当前线程下一次序列化时被覆盖, 请在当前线程中立即发送
+     * @return  Content-Type为application/json的请求体
+     */
+    public BCHttpRequest.Body transToJsonBody() {
+        return writeJson().asBody();
+    }
+
+    private BCJsonBuffer writeJson() {
+        BCJsonBuffer buffer = BCJsonBuffer.obtain();
+
+        buffer.beginObject()
+                .field("app_id", getAppId())
+                .field("timestamp", getTimestamp())
+                .field("app_sign", getAppSign())
+                .field("channel", channel == null ? null : channel.name())
+                .field("total_fee", totalFee)
+                .field("bill_no", billNum)
+                .field("title", title);
+
+        if (optional != null && optional.size() != 0)
+            buffer.field("optional", optional);
+
+        buffer.field("qr_pay_mode", qrPayMode)
+                .field("return_url", returnUrl)
+                .endObject();
+
+        return buffer;
+    }
+
     /**
      * 将实例转化成符合后台请求的键值对
      * 用于以json方式post请求
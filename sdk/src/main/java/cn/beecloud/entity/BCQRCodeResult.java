@@ -8,6 +8,16 @@ package cn.beecloud.entity;
 
 import android.graphics.Bitmap;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.zxing.WriterException;
+
+import java.io.IOException;
+
+import cn.beecloud.BCQRCodeMatrix;
+
 /**
  * 用于存储支付二维码的数据
  */
@@ -21,6 +31,9 @@ public class BCQRCodeResult extends BCRestfulCommonResult {
     private String qrCodeRawContent;
     private Bitmap qrCodeBitmap;
 
+    //二维码的模块矩阵, 首次获取时生成
+    private BCQRCodeMatrix qrCodeMatrix;
+
     private String aliQRCodeHtml;
 
     /**
@@ -80,6 +93,28 @@ public class BCQRCodeResult extends BCRestfulCommonResult {
         this.aliQRCodeHtml = aliQRCodeHtml;
     }
 
+    /**
+     * 构造函数
+     *
+     * @param resultCode        返回码
+     * @param resultMsg         返回信息
+     * @param errDetail         具体错误信息
+     * @param qrCodeHeight      二维码高度, 以px为单位
+     * @param qrCodeWidth       二维码宽度, 以px为单位
+     * @param qrCodeRawContent  原始用于生成二维码的字符串
+     * @param qrCodeBitmap      二维码
+     * @param aliQRCodeHtml     ALI_QRCODE内嵌二维码HTML
+     * @param qrCodeMatrix      二维码的模块矩阵, null则在首次获取时生成
+     */
+    public BCQRCodeResult(Integer resultCode, String resultMsg, String errDetail,
+                          Integer qrCodeHeight, Integer qrCodeWidth,
+                          String qrCodeRawContent, Bitmap qrCodeBitmap,
+                          String aliQRCodeHtml, BCQRCodeMatrix qrCodeMatrix) {
+        this(resultCode, resultMsg, errDetail, qrCodeHeight, qrCodeWidth,
+                qrCodeRawContent, qrCodeBitmap, aliQRCodeHtml);
+        this.qrCodeMatrix = qrCodeMatrix;
+    }
+
     /**
      * @return  二维码高度, 以px为单位
      */
@@ -108,6 +143,23 @@ public class BCQRCodeResult extends BCRestfulCommonResult {
         return qrCodeBitmap;
     }
 
+    /**
+     * 获取二维码的模块矩阵, 可以通过BCQRCodeDrawable以任意大小显示, 不需要生成Bitmap
+     *
+     * @return  模块矩阵, 没有二维码内容或者内容无法生成二维码时返回null
+     * @see cn.beecloud.BCQRCodeDrawable
+     */
+    public synchronized BCQRCodeMatrix getQrCodeMatrix() {
+        if (qrCodeMatrix == null && qrCodeRawContent != null) {
+            try {
+                qrCodeMatrix = BCQRCodeMatrix.encode(qrCodeRawContent);
+            } catch (WriterException e) {
+                return null;
+            }
+        }
+        return qrCodeMatrix;
+    }
+
     /**
      * @return  ALI_QRCODE内嵌二维码HTML
      */
@@ -123,6 +175,107 @@ public class BCQRCodeResult extends BCRestfulCommonResult {
      */
     @Override
     public BCRestfulCommonResult transJsonToResultObject(String jsonStr) {
-        return null;
+        return BCJsonCodec.getGson().fromJson(jsonStr, BCQRCodeResult.class);
+    }
+
+    /**
+     * 按支付渠道将json串转化为BCQRCodeResult实例
+     * WX_NATIVE读取code_url, ALI_QRCODE读取url, ALI_OFFLINE_QRCODE读取qr_code作为二维码内容
+     *
+     * @param jsonStr   json串
+     * @param channel   请求二维码的支付渠道
+     * @return BCQRCodeResult实例
+     * @throws IOException  json格式错误
+     */
+    public static BCQRCodeResult transJsonToResultObject(String jsonStr, BCReqParams.BCChannelTypes channel)
+            throws IOException {
+        return new JsonAdapter(channel).fromJson(jsonStr);
+    }
+
+    /**
+     * BCQRCodeResult的json读写
+     * 读取时只把渠道对应的字段作为二维码内容: code_url(WX_NATIVE), url(ALI_QRCODE),
+     * qr_code(ALI_OFFLINE_QRCODE), 未指定渠道时三者均可;
+     * html作为ALI_QRCODE内嵌二维码HTML; 二维码图片和模块矩阵不参与读写
+     */
+    static class JsonAdapter extends TypeAdapter<BCQRCodeResult> {
+
+        //二维码内容对应的字段, null表示接受code_url, url和qr_code
+        private final String contentKey;
+
+        JsonAdapter() {
+            this(null);
+        }
+
+        JsonAdapter(BCReqParams.BCChannelTypes channel) {
+            contentKey = contentKeyOf(channel);
+        }
+
+        private static String contentKeyOf(BCReqParams.BCChannelTypes channel) {
+            if (channel == null)
+                return null;
+
+            switch (channel) {
+                case WX_NATIVE:
+                    return "code_url";
+                case ALI_QRCODE:
+                    return "url";
+                case ALI_OFFLINE_QRCODE:
+                    return "qr_code";
+                default:
+                    return null;
+            }
+        }
+
+        private boolean isContentKey(String name) {
+            if (contentKey != null)
+                return contentKey.equals(name);
+
+            return "code_url".equals(name) || "url".equals(name) || "qr_code".equals(name);
+        }
+        @Override
+        public void write(JsonWriter writer, BCQRCodeResult result) throws IOException {
+            if (result == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            BCJsonCodec.writeCommonFields(writer, result);
+            writer.name("code_url").value(result.qrCodeRawContent);
+            writer.name("html").value(result.aliQRCodeHtml);
+            writer.endObject();
+        }
+
+        @Override
+        public BCQRCodeResult read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+
+            BCQRCodeResult result = new BCQRCodeResult();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (result.readCommonField(name, reader))
+                    continue;
+
+                if (isContentKey(name)) {
+                    String content = BCJsonCodec.nextStringOrNull(reader);
+                    if (content != null)
+                        result.qrCodeRawContent = content;
+                } else if ("html".equals(name)) {
+                    result.aliQRCodeHtml = BCJsonCodec.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            result.finishCommonFields();
+            return result;
+        }
     }
 }
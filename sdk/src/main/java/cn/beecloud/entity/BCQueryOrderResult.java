@@ -6,12 +6,18 @@
  */
 package cn.beecloud.entity;
 
-import com.google.gson.Gson;
-
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class BCQueryOrderResult extends BCRestfulCommonResult {
     //实际返回订单结果数量
@@ -62,36 +68,107 @@ public class BCQueryOrderResult extends BCRestfulCommonResult {
      */
     @Override
     public BCRestfulCommonResult transJsonToResultObject(String jsonStr){
-        Gson gson = new Gson();
-        Map<String, Object> responseMap = gson.fromJson(jsonStr, HashMap.class);
+        try {
+            return transReaderToResultObject(new StringReader(jsonStr));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid json: " + e.getMessage());
+        }
+    }
 
-        BCQueryOrderResult bcQueryResult = new BCQueryOrderResult();
+    /**
+     * 直接从服务端返回的数据流解析BCQueryOrderResult实例, 不生成中间的json串
+     * @param in    UTF-8编码的json数据流, 由调用方关闭
+     * @return      BCQueryOrderResult实例
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static BCQueryOrderResult transStreamToResultObject(InputStream in) throws IOException {
+        return transReaderToResultObject(new InputStreamReader(in, "UTF-8"));
+    }
 
-        BCRestfulCommonResult.transJsonToResultObject(responseMap, bcQueryResult);
+    private static BCQueryOrderResult transReaderToResultObject(Reader in) throws IOException {
+        return readResult(new JsonReader(in));
+    }
 
-        if (responseMap.get("count") != null)
-            bcQueryResult.count = ((Double)responseMap.get("count")).intValue();
+    private static BCQueryOrderResult readResult(JsonReader reader) throws IOException {
+        BCQueryOrderResult bcQueryResult = new BCQueryOrderResult();
 
         //如果是支付订单则bills可能包含列表
         //如果是退款订单则refunds可能包含列表
-        List<Map<String, Object>> ordersMap = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (bcQueryResult.readCommonField(name, reader))
+                continue;
+
+            if ("count".equals(name)) {
+                bcQueryResult.count = BCJsonCodec.nextIntegerOrNull(reader);
+            } else if ("bills".equals(name) && bcQueryResult.orders == null) {
+                bcQueryResult.orders = readOrders(reader, false);
+            } else if ("refunds".equals(name) && bcQueryResult.orders == null) {
+                bcQueryResult.orders = readOrders(reader, true);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-        if (responseMap.get("bills") != null) {
-            ordersMap = (List<Map<String, Object>>) responseMap.get("bills");
-            bcQueryResult.orders = new ArrayList<BCBill>();
+        bcQueryResult.finishCommonFields();
+        return bcQueryResult;
+    }
 
-            for (Map<String, Object> bill : ordersMap){
-                bcQueryResult.orders.add(BCBill.transMapToBill(bill));
+    private static List<BCBill> readOrders(JsonReader reader, boolean refund) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        List<BCBill> orders = new ArrayList<BCBill>();
+        reader.beginArray();
+        while (reader.hasNext())
+            orders.add(refund ? BCRefundOrder.readRefundOrder(reader) : BCBill.readBill(reader));
+        reader.endArray();
+
+        return orders;
+    }
+
+    /**
+     * BCQueryOrderResult的json读写
+     */
+    static class JsonAdapter extends TypeAdapter<BCQueryOrderResult> {
+        @Override
+        public void write(JsonWriter writer, BCQueryOrderResult result) throws IOException {
+            if (result == null) {
+                writer.nullValue();
+                return;
             }
-        } else if (responseMap.get("refunds") != null) {
-            ordersMap = (List<Map<String, Object>>) responseMap.get("refunds");
-            bcQueryResult.orders = new ArrayList<BCBill>();
 
-            for (Map<String, Object> bill : ordersMap){
-                bcQueryResult.orders.add(BCRefundOrder.transMapToRefundOrder(bill));
+            writer.beginObject();
+            BCJsonCodec.writeCommonFields(writer, result);
+            writer.name("count").value(result.count);
+
+            if (result.orders != null) {
+                boolean refund = !result.orders.isEmpty() && result.orders.get(0) instanceof BCRefundOrder;
+                writer.name(refund ? "refunds" : "bills");
+                writer.beginArray();
+                for (BCBill order : result.orders) {
+                    if (order instanceof BCRefundOrder)
+                        BCJsonCodec.getGson().getAdapter(BCRefundOrder.class).write(writer, (BCRefundOrder) order);
+                    else
+                        BCJsonCodec.getGson().getAdapter(BCBill.class).write(writer, order);
+                }
+                writer.endArray();
             }
+
+            writer.endObject();
         }
 
-        return bcQueryResult;
+        @Override
+        public BCQueryOrderResult read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return readResult(reader);
+        }
     }
 }
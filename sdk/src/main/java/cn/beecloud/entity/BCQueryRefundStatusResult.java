@@ -6,10 +6,16 @@
  */
 package cn.beecloud.entity;
 
-import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 
 /**
  * 用于查询退款状态
@@ -46,18 +52,74 @@ public class BCQueryRefundStatusResult extends BCRestfulCommonResult {
      */
     @Override
     public BCRestfulCommonResult transJsonToResultObject(String jsonStr) {
-        Gson gson = new Gson();
-        Map<String, Object> responseMap = gson.fromJson(jsonStr, HashMap.class);
+        try {
+            return transReaderToResultObject(new StringReader(jsonStr));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid json: " + e.getMessage());
+        }
+    }
 
+    /**
+     * 直接从服务端返回的数据流解析BCQueryRefundStatusResult实例, 不生成中间的json串
+     * @param in    UTF-8编码的json数据流, 由调用方关闭
+     * @return      BCQueryRefundStatusResult实例
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static BCQueryRefundStatusResult transStreamToResultObject(InputStream in) throws IOException {
+        return transReaderToResultObject(new InputStreamReader(in, "UTF-8"));
+    }
+
+    private static BCQueryRefundStatusResult transReaderToResultObject(Reader in) throws IOException {
+        return readResult(new JsonReader(in));
+    }
+
+    private static BCQueryRefundStatusResult readResult(JsonReader reader) throws IOException {
         BCQueryRefundStatusResult bcQueryRefundStatusResult = new BCQueryRefundStatusResult();
-        BCRestfulCommonResult.transJsonToResultObject(responseMap, bcQueryRefundStatusResult);
 
-        if (responseMap.get("refund_status") != null)
-            bcQueryRefundStatusResult.refundStatus = (String) responseMap.get("refund_status");
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (bcQueryRefundStatusResult.readCommonField(name, reader))
+                continue;
+
+            if ("refund_status".equals(name))
+                bcQueryRefundStatusResult.refundStatus = BCJsonCodec.nextStringOrNull(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
 
+        bcQueryRefundStatusResult.finishCommonFields();
         return bcQueryRefundStatusResult;
     }
 
+    /**
+     * BCQueryRefundStatusResult的json读写
+     */
+    static class JsonAdapter extends TypeAdapter<BCQueryRefundStatusResult> {
+        @Override
+        public void write(JsonWriter writer, BCQueryRefundStatusResult result) throws IOException {
+            if (result == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            BCJsonCodec.writeCommonFields(writer, result);
+            writer.name("refund_status").value(result.refundStatus);
+            writer.endObject();
+        }
+
+        @Override
+        public BCQueryRefundStatusResult read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return readResult(reader);
+        }
+    }
+
     /**
      * 退款状态
      */
@@ -6,12 +6,11 @@
  */
 package cn.beecloud.entity;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.util.HashMap;
-import java.util.Map;
 
 import cn.beecloud.BCException;
 
@@ -22,6 +21,8 @@ import cn.beecloud.BCException;
  */
 public class BCQueryReqParams extends BCReqParams {
 
+    private static final JsonAdapter JSON_ADAPTER = new JsonAdapter();
+
     /**
      * 商户订单号
      * 发起支付时填写的订单号
@@ -84,39 +85,49 @@ public class BCQueryReqParams extends BCReqParams {
      * @return 转码后的json串
      */
     public String transToEncodedJsonString() {
-        Map<String, Object> params = new HashMap<String, Object>();
-        params.put("app_id", getAppId());
-        params.put("timestamp", getTimestamp());
-        params.put("app_sign", getAppSign());
-        params.put("channel", channel);
+        String paramStr = JSON_ADAPTER.toJson(this);
+
+        try {
+            paramStr = URLEncoder.encode(paramStr, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+
+        return paramStr;
+    }
 
-        if (billNum != null)
-            params.put("bill_no", billNum);
+    /**
+     * BCQueryReqParams的json序列化, 为null的条件不写入
+     * 只用于发送请求, 没有对应的反序列化
+     */
+    static class JsonAdapter extends BCJsonCodec.WriteAdapter<BCQueryReqParams> {
+        @Override
+        void write(JsonWriter writer, BCQueryReqParams params) throws IOException {
+            writer.beginObject();
+            writer.name("app_id").value(params.getAppId());
+            writer.name("timestamp").value(params.getTimestamp());
+            writer.name("app_sign").value(params.getAppSign());
+            writer.name("channel").value(params.channel == null ? null : params.channel.name());
 
-        if (refundNum != null)
-            params.put("refund_no", refundNum);
+            if (params.billNum != null)
+                writer.name("bill_no").value(params.billNum);
 
-        if (startTime != null)
-            params.put("start_time", startTime);
+            if (params.refundNum != null)
+                writer.name("refund_no").value(params.refundNum);
 
-        if (endTime != null)
-            params.put("end_time", endTime);
+            if (params.startTime != null)
+                writer.name("start_time").value(params.startTime);
 
-        if (skip != null)
-            params.put("skip", skip);
+            if (params.endTime != null)
+                writer.name("end_time").value(params.endTime);
 
-        if (limit != null)
-            params.put("limit", limit);
+            if (params.skip != null)
+                writer.name("skip").value(params.skip);
 
-        Gson gson = new Gson();
-        String paramStr = gson.toJson(params);
+            if (params.limit != null)
+                writer.name("limit").value(params.limit);
 
-        try {
-            paramStr = URLEncoder.encode(paramStr, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+            writer.endObject();
         }
-
-        return paramStr;
     }
 }
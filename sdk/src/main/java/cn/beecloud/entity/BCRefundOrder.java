@@ -6,6 +6,12 @@
  */
 package cn.beecloud.entity;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -111,4 +117,76 @@ public class BCRefundOrder extends BCBill {
 
         return refundOrder;
     }
+
+    /**
+     * 从JsonReader直接读取BCRefundOrder实例
+     * @param reader    指向refund对象的JsonReader
+     * @return          BCRefundOrder实例
+     * @throws IOException  读取失败或者json格式错误
+     */
+    public static BCRefundOrder readRefundOrder(JsonReader reader) throws IOException {
+        BCRefundOrder refundOrder = new BCRefundOrder();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (BCBill.readBillField(name, reader, refundOrder, true))
+                continue;
+
+            if ("refund_no".equals(name))
+                refundOrder.refundNum = BCJsonCodec.nextStringOrNull(reader);
+            else if ("refund_fee".equals(name))
+                refundOrder.refundFee = BCJsonCodec.nextIntegerOrNull(reader);
+            else if ("finish".equals(name))
+                refundOrder.refundFinish = BCJsonCodec.nextBooleanOrNull(reader);
+            else if ("result".equals(name))
+                refundOrder.refundResult = BCJsonCodec.nextBooleanOrNull(reader);
+            else if ("created_time".equals(name))
+                refundOrder.refundCreatedTime = BCJsonCodec.nextLongOrNull(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+
+        if (refundOrder.refundFinish == null)
+            refundOrder.refundFinish = Boolean.FALSE;
+
+        if (refundOrder.refundResult == null)
+            refundOrder.refundResult = Boolean.FALSE;
+
+        return refundOrder;
+    }
+
+    /**
+     * BCRefundOrder的json读写
+     */
+    static class JsonAdapter extends TypeAdapter<BCRefundOrder> {
+        @Override
+        public void write(JsonWriter writer, BCRefundOrder refundOrder) throws IOException {
+            if (refundOrder == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            BCBill.writeBillFields(writer, refundOrder, true);
+            writer.name("refund_no").value(refundOrder.refundNum);
+            writer.name("refund_fee").value(refundOrder.refundFee);
+            writer.name("finish");
+            BCJsonCodec.writeBooleanOrNull(writer, refundOrder.refundFinish);
+            writer.name("result");
+            BCJsonCodec.writeBooleanOrNull(writer, refundOrder.refundResult);
+            writer.name("created_time").value(refundOrder.refundCreatedTime);
+            writer.endObject();
+        }
+
+        @Override
+        public BCRefundOrder read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return readRefundOrder(reader);
+        }
+    }
 }
@@ -6,11 +6,9 @@
  */
 package cn.beecloud.entity;
 
-import java.util.Date;
-
 import cn.beecloud.BCCache;
 import cn.beecloud.BCException;
-import cn.beecloud.BCMD5Util;
+import cn.beecloud.BCSigner;
 
 /**
  * 向服务端请求的基类
@@ -231,16 +229,23 @@ public class BCReqParams {
         if (reqType == ReqType.QRCODE && !BCChannelTypes.isValidQRCodeReqChannelType(channel))
             throw new BCException("非法生成二维码请求支付渠道");
 
-        BCCache mCache = BCCache.getInstance();
+        BCSigner signer = BCCache.getInstance().getSigner();
 
-        if (mCache.appId == null || mCache.appSecret == null) {
+        if (signer == null) {
             throw new BCException("parameters: 请通过BeeCloud初始化appId和appSecret");
         } else {
-            appId = mCache.appId;
-            timestamp = (new Date()).getTime();
-            appSign = BCMD5Util.getMessageDigest(appId +
-                    timestamp + mCache.appSecret);
+            appId = signer.getAppId();
+            applySignature(signer.signNow());
             this.channel = channel;
         }
     }
+
+    /**
+     * 使用已经生成的签名, 用于批量请求共用同一个时间戳和签名
+     * @param signature     通过BCCache.getInstance().getSigner()生成的签名
+     */
+    public void applySignature(BCSigner.Signature signature) {
+        timestamp = signature.getTimestamp();
+        appSign = signature.getSign();
+    }
 }
@@ -6,6 +6,9 @@
  */
 package cn.beecloud.entity;
 
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
 import java.util.Map;
 
 import cn.beecloud.async.BCResult;
@@ -85,6 +88,34 @@ public abstract class BCRestfulCommonResult implements BCResult {
 
     }
 
+    /**
+     * 从JsonReader读取通用的结果字段
+     * @param name      当前字段名
+     * @param reader    指向当前字段值的JsonReader
+     * @return          true表示已经读取该字段, false表示不是通用字段, 由调用方处理
+     * @throws IOException  读取失败或者json格式错误
+     */
+    protected boolean readCommonField(String name, JsonReader reader) throws IOException {
+        if ("result_code".equals(name)) {
+            resultCode = BCJsonCodec.nextIntegerOrNull(reader);
+        } else if ("result_msg".equals(name)) {
+            resultMsg = BCJsonCodec.nextStringOrNull(reader);
+        } else if ("err_detail".equals(name)) {
+            errDetail = BCJsonCodec.nextStringOrNull(reader);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 流式解析结束后调用, 缺失的信息与通过Map解析时一致, 记为"null"
+     */
+    protected void finishCommonFields() {
+        resultMsg = String.valueOf(resultMsg);
+        errDetail = String.valueOf(errDetail);
+    }
+
     /**
      * 将json串转化为BCQueryResult实例
      * @param jsonStr   json串
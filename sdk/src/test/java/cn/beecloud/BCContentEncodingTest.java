@@ -0,0 +1,113 @@
+/**
+ * BCContentEncodingTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class BCContentEncodingTest {
+
+    private static final String JSON;
+
+    static {
+        StringBuilder builder = new StringBuilder("{\"result_code\":0,\"bills\":[");
+        for (int i = 0; i < 200; i++)
+            builder.append(i == 0 ? "" : ",").append("{\"bill_no\":\"bc").append(i).append("\",\"title\":\"订单\"}");
+        JSON = builder.append("]}").toString();
+    }
+
+    @Test
+    public void decodesGzip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertDecoded("gzip", compress(new GZIPOutputStream(out), out));
+    }
+
+    @Test
+    public void decodesZlibWrappedDeflate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertDecoded("deflate", compress(new DeflaterOutputStream(out), out));
+    }
+
+    @Test
+    public void decodesRawDeflate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        assertDecoded("deflate", compress(new DeflaterOutputStream(out, deflater), out));
+        deflater.end();
+    }
+
+    @Test
+    public void encodingIsCaseInsensitive() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertDecoded(" GZIP ", compress(new GZIPOutputStream(out), out));
+    }
+
+    @Test
+    public void leavesIdentityAndUnknownEncodingsAlone() throws IOException {
+        InputStream content = new ByteArrayInputStream(new byte[]{1, 2, 3});
+
+        Map<String, String> headers = new HashMap<String, String>();
+        assertSame(content, BCContentEncoding.decode(headers, content));
+
+        headers.put("content-encoding", "br");
+        assertSame(content, BCContentEncoding.decode(headers, content));
+        assertEquals("br", headers.get("content-encoding"));
+    }
+
+    @Test
+    public void keepsExistingAcceptEncoding() {
+        BCHttpRequest request = new BCHttpRequest(BCHttpRequest.METHOD_GET, "http://a/");
+        BCContentEncoding.acceptCompressed(request);
+        assertEquals(BCContentEncoding.ACCEPT_ENCODING, request.getHeaders().get("Accept-Encoding"));
+
+        request = new BCHttpRequest(BCHttpRequest.METHOD_GET, "http://a/");
+        request.setHeader("accept-encoding", "identity");
+        BCContentEncoding.acceptCompressed(request);
+        assertFalse(request.getHeaders().containsKey("Accept-Encoding"));
+    }
+
+    private static byte[] compress(OutputStream compressor, ByteArrayOutputStream out) throws IOException {
+        compressor.write(JSON.getBytes("UTF-8"));
+        compressor.close();
+        return out.toByteArray();
+    }
+
+    private static void assertDecoded(String encoding, byte[] compressed) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-encoding", encoding);
+        headers.put("content-length", String.valueOf(compressed.length));
+
+        InputStream decoded = BCContentEncoding.decode(headers, new ByteArrayInputStream(compressed));
+        assertEquals(JSON, read(decoded));
+        decoded.close();
+
+        assertFalse(headers.containsKey("content-encoding"));
+        assertFalse(headers.containsKey("content-length"));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * BCHedgedRequestTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对冲等待时间的计算, 每个用例都写满延迟窗口, 不受其他用例记录的延迟影响
+ */
+public class BCHedgedRequestTest {
+
+    private static final int WINDOW = 128;
+
+    @Test
+    public void delayFollowsLatencyPercentile() {
+        //1ms到128ms各一个样本
+        for (int i = 1; i <= WINDOW; i++)
+            BCHedgedRequest.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+
+        assertEquals(64, BCHedgedRequest.hedgeDelayMillis(0.5));
+        assertEquals(122, BCHedgedRequest.hedgeDelayMillis(0.95));
+        assertEquals(128, BCHedgedRequest.hedgeDelayMillis(1.0));
+    }
+
+    @Test
+    public void delayHasLowerBound() {
+        fill(1);
+
+        assertEquals(20, BCHedgedRequest.hedgeDelayMillis(0.95));
+    }
+
+    @Test
+    public void oldSamplesLeaveWindow() {
+        fill(1000);
+        fill(30);
+
+        assertEquals(30, BCHedgedRequest.hedgeDelayMillis(0.5));
+        assertEquals(30, BCHedgedRequest.hedgeDelayMillis(1.0));
+    }
+
+    private static void fill(long latencyMillis) {
+        for (int i = 0; i < WINDOW; i++)
+            BCHedgedRequest.recordLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * BCHostSelectorTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BCHostSelectorTest {
+
+    private static final String HOST_A = "http://a";
+    private static final String HOST_B = "http://b";
+
+    private static final long FIRST_EJECTION = TimeUnit.SECONDS.toNanos(10);
+
+    private BCHostSelector selector;
+    private long now;
+
+    @Before
+    public void setUp() {
+        selector = new BCHostSelector(new String[]{HOST_A, HOST_B});
+        now = System.nanoTime();
+    }
+
+    private void ejectA() {
+        for (int i = 0; i < 3; i++)
+            selector.reportFailure(HOST_A, now);
+    }
+
+    @Test
+    public void ejectsAfterConsecutiveFailures() {
+        selector.reportFailure(HOST_A, now);
+        selector.reportFailure(HOST_A, now);
+        assertFalse(selector.isEjected(HOST_A));
+
+        selector.reportFailure(HOST_A, now);
+        assertTrue(selector.isEjected(HOST_A));
+
+        for (int i = 0; i < 50; i++)
+            assertEquals(HOST_B, selector.selectHost(null, now + 1));
+    }
+
+    @Test
+    public void successResetsConsecutiveFailures() {
+        selector.reportFailure(HOST_A, now);
+        selector.reportFailure(HOST_A, now);
+        selector.reportSuccess(HOST_A, TimeUnit.MILLISECONDS.toNanos(50));
+        selector.reportFailure(HOST_A, now);
+
+        assertFalse(selector.isEjected(HOST_A));
+    }
+
+    @Test
+    public void probesOnceAfterEjectionExpires() {
+        ejectA();
+
+        assertEquals(HOST_B, selector.selectHost(null, now + FIRST_EJECTION - 1));
+
+        //到期后只放行一个试探请求
+        assertEquals(HOST_A, selector.selectHost(null, now + FIRST_EJECTION));
+        for (int i = 0; i < 50; i++)
+            assertEquals(HOST_B, selector.selectHost(null, now + FIRST_EJECTION + 1));
+
+        selector.reportSuccess(HOST_A, TimeUnit.MILLISECONDS.toNanos(50));
+        assertFalse(selector.isEjected(HOST_A));
+    }
+
+    @Test
+    public void failedProbeDoublesEjection() {
+        ejectA();
+
+        long probe = now + FIRST_EJECTION;
+        assertEquals(HOST_A, selector.selectHost(null, probe));
+        selector.reportFailure(HOST_A, probe);
+        assertTrue(selector.isEjected(HOST_A));
+
+        assertEquals(HOST_B, selector.selectHost(null, probe + FIRST_EJECTION));
+        assertEquals(HOST_A, selector.selectHost(null, probe + 2 * FIRST_EJECTION));
+    }
+
+    @Test
+    public void fallsBackToEjectedHostWhenNoneHealthy() {
+        ejectA();
+
+        assertEquals(HOST_A, selector.selectHost(Collections.singletonList(HOST_B), now + 1));
+        assertNull(selector.selectHost(Arrays.asList(HOST_A, HOST_B), now + 1));
+    }
+
+    @Test
+    public void prefersFasterHost() {
+        for (int i = 0; i < 20; i++) {
+            selector.reportSuccess(HOST_A, TimeUnit.MILLISECONDS.toNanos(20));
+            selector.reportSuccess(HOST_B, TimeUnit.MILLISECONDS.toNanos(400));
+        }
+
+        for (int i = 0; i < 50; i++)
+            assertEquals(HOST_A, selector.selectHost(null, now));
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * BCHttpClientUtilTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.entity.BCQueryOrderResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 故障转移, 重试预算和对冲请求
+ */
+public class BCHttpClientUtilTest {
+
+    private static final String SLOW = "http://slow";
+    private static final String FAST = "http://fast";
+    private static final String PATH = "/1/rest/bills?para=%7B%7D";
+
+    private HostTransport transport;
+
+    @Before
+    public void setUp() {
+        transport = new HostTransport();
+        BeeCloud.setHttpTransport(transport);
+        BCHttpClientUtil.setHosts(new String[]{SLOW, FAST});
+
+        //补满其他用例消耗的重试预算
+        for (int i = 0; i < 100; i++)
+            BCHttpClientUtil.getQueryRetryPolicy().onRequest();
+    }
+
+    @After
+    public void tearDown() {
+        BeeCloud.setHttpTransport(null);
+        BCHttpClientUtil.setHosts(null);
+    }
+
+    @Test
+    public void failoverRetriesOnAnotherHost() throws IOException {
+        transport.setBehavior(SLOW, 500, 0);
+        transport.setBehavior(FAST, 200, 0);
+
+        BCHttpResponse response = BCHttpClientUtil.httpGetWithFailover(SLOW + PATH);
+
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(FAST, response.getContentAsString());
+        assertEquals(2, transport.requestCount());
+    }
+
+    @Test
+    public void retryBudgetLimitsFailoverRequests() {
+        transport.setBehavior(SLOW, 500, 0);
+        transport.setBehavior(FAST, 500, 0);
+
+        int calls = 40;
+        for (int i = 0; i < calls; i++)
+            BCHttpClientUtil.releaseResponse(BCHttpClientUtil.httpGetWithFailover(SLOW + PATH));
+
+        //每个请求最多重试2次, 但预算只允许最初的10次加上约10%的重试
+        int requests = transport.requestCount();
+        assertTrue("requests: " + requests, requests > calls);
+        assertTrue("requests: " + requests, requests <= calls + 10 + calls / 10 + 1);
+    }
+
+    @Test
+    public void hedgeWinsAndAbortsSlowPrimary() throws IOException {
+        transport.setBehavior(SLOW, 200, 5000);
+        transport.setBehavior(FAST, 200, 0);
+        recordFastLatencies();
+
+        long start = System.nanoTime();
+        BCHttpResponse response = BCHttpClientUtil.httpGetHedged(SLOW + PATH);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertNotNull(response);
+        assertEquals(FAST, response.getContentAsString());
+        assertTrue("elapsed: " + elapsed, elapsed < 2000);
+        assertTrue(transport.requestTo(SLOW).isAborted());
+    }
+
+    @Test
+    public void cancellingFutureAbortsPrimaryAndHedge() throws InterruptedException {
+        transport.setBehavior(SLOW, 200, 5000);
+        transport.setBehavior(FAST, 200, 5000);
+        recordFastLatencies();
+
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        Thread caller = new Thread(BCFuture.wrap(future, new Runnable() {
+            @Override
+            public void run() {
+                BCHttpClientUtil.releaseResponse(BCHttpClientUtil.httpGetHedged(SLOW + PATH));
+            }
+        }));
+        caller.start();
+
+        transport.awaitRequests(2, 2000);
+        future.cancel(true);
+        caller.join(2000);
+
+        assertFalse(caller.isAlive());
+        assertTrue(transport.requestTo(SLOW).isAborted());
+        assertTrue(transport.requestTo(FAST).isAborted());
+    }
+
+    /**
+     * 使对冲等待时间降为下限
+     */
+    private static void recordFastLatencies() {
+        for (int i = 0; i < 128; i++)
+            BCHedgedRequest.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * 按主机返回固定的状态码和延迟, 内容为主机地址
+     */
+    private static class HostTransport implements BCHttpTransport {
+        private final Map<String, int[]> behaviors = new HashMap<String, int[]>();
+        private final List<BCHttpRequest> requests = new ArrayList<BCHttpRequest>();
+
+        synchronized void setBehavior(String host, int statusCode, int latencyMillis) {
+            behaviors.put(host, new int[]{statusCode, latencyMillis});
+        }
+
+        synchronized int requestCount() {
+            return requests.size();
+        }
+
+        synchronized BCHttpRequest requestTo(String host) {
+            for (BCHttpRequest request : requests) {
+                if (request.getUrl().startsWith(host))
+                    return request;
+            }
+            return null;
+        }
+
+        synchronized void awaitRequests(int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (requests.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new AssertionError("requests: " + requests.size());
+                wait(remaining);
+            }
+        }
+
+        @Override
+        public BCHttpResponse execute(BCHttpRequest request) throws IOException {
+            String host = BCHttpClientUtil.getHostSelector().hostOf(request.getUrl());
+            int[] behavior;
+            synchronized (this) {
+                behavior = behaviors.get(host);
+                requests.add(request);
+                notifyAll();
+            }
+
+            final Thread caller = Thread.currentThread();
+            request.setAbortAction(new Runnable() {
+                @Override
+                public void run() {
+                    caller.interrupt();
+                }
+            });
+
+            try {
+                Thread.sleep(behavior[1]);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("request aborted");
+            } finally {
+                request.setAbortAction(null);
+                if (request.isAborted())
+                    Thread.interrupted();
+            }
+
+            return new BCHttpResponse(behavior[0], new HashMap<String, String>(),
+                    new ByteArrayInputStream(host.getBytes("UTF-8")));
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
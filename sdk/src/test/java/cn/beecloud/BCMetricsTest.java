@@ -0,0 +1,81 @@
+/**
+ * BCMetricsTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCReqParams;
+import cn.beecloud.loadtest.BCInMemoryTransport;
+import cn.beecloud.loadtest.BCMockService;
+
+import static org.junit.Assert.assertEquals;
+
+public class BCMetricsTest {
+
+    private BCMockService service;
+
+    private final BCMetrics.Listener failingListener = new BCMetrics.Listener() {
+        @Override
+        public void onRequestFinished(BCMetrics.Endpoint endpoint, String host, int statusCode,
+                                      BCMetrics.Failure failure, long latencyNanos) {
+            throw new IllegalStateException("monitoring is down");
+        }
+
+        @Override
+        public void onRetry(BCMetrics.Endpoint endpoint, String host) {
+            throw new IllegalStateException("monitoring is down");
+        }
+    };
+
+    @Before
+    public void setUp() {
+        BeeCloud.setAppIdAndSecret("test-app-id", "test-app-secret");
+
+        service = new BCMockService();
+        service.setLatency(0, 0);
+        BeeCloud.setHttpTransport(new BCInMemoryTransport(service));
+        BCHttpClientUtil.setHosts(new String[]{"http://mock"});
+
+        BCMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        BCMetrics.removeListener(failingListener);
+        BeeCloud.setHttpTransport(null);
+        BCHttpClientUtil.setHosts(null);
+        BeeCloud.setAppIdAndSecret(null, null);
+    }
+
+    @Test
+    public void countsCompressedBytesIn() {
+        BCQueryOrderResult result = BCQuery.getInstance().queryBills(BCReqParams.BCChannelTypes.WX,
+                null, null, null, 0, 50);
+        assertEquals(Integer.valueOf(0), result.getResultCode());
+
+        List<BCMetrics.EndpointSnapshot> entries = BCMetrics.snapshot().getEntries(BCMetrics.Endpoint.BILLS);
+        assertEquals(1, entries.size());
+
+        BCMetrics.EndpointSnapshot bills = entries.get(0);
+        assertEquals(1, bills.getSuccessCount());
+        assertEquals(service.getBodyBytes(), bills.getBytesIn());
+    }
+
+    @Test
+    public void listenerExceptionDoesNotFailRequest() {
+        BCMetrics.addListener(failingListener);
+
+        BCQueryOrderResult result = BCQuery.getInstance().queryBills(BCReqParams.BCChannelTypes.WX,
+                null, null, null, 0, 10);
+        assertEquals(Integer.valueOf(0), result.getResultCode());
+        assertEquals(1, BCMetrics.snapshot().getEntries(BCMetrics.Endpoint.BILLS).get(0).getSuccessCount());
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * BCQueryCacheTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import cn.beecloud.entity.BCBill;
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCQueryRefundStatusResult;
+import cn.beecloud.entity.BCReqParams;
+import cn.beecloud.loadtest.BCInMemoryTransport;
+import cn.beecloud.loadtest.BCMockService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BCQueryCacheTest {
+
+    private static final BCReqParams.BCChannelTypes CHANNEL = BCReqParams.BCChannelTypes.WX;
+
+    //已经结束的时间段
+    private static final long CLOSED_START = 1440000000000L;
+    private static final long CLOSED_END = 1440086400000L;
+
+    private BCQueryCache cache;
+    private BCMockService service;
+
+    @Before
+    public void setUp() {
+        BeeCloud.setAppIdAndSecret("test-app-id", "test-app-secret");
+        BeeCloud.setQueryCache(100, 30000, 600000, 5000);
+
+        cache = new BCQueryCache();
+
+        service = new BCMockService();
+        service.setLatency(0, 0);
+        BeeCloud.setHttpTransport(new BCInMemoryTransport(service));
+        BCHttpClientUtil.setHosts(new String[]{"http://mock"});
+    }
+
+    @After
+    public void tearDown() {
+        BeeCloud.setHttpTransport(null);
+        BCHttpClientUtil.setHosts(null);
+        BeeCloud.setQueryCache(0, 30000, 600000, 5000);
+        BeeCloud.setAppIdAndSecret(null, null);
+    }
+
+    private static BCQueryOrderResult success(int orders) {
+        ArrayList<BCBill> bills = new ArrayList<BCBill>();
+        for (int i = 0; i < orders; i++)
+            bills.add(new BCBill());
+        return new BCQueryOrderResult(0, "OK", "", orders, bills);
+    }
+
+    @Test
+    public void returnsCachedResult() {
+        BCQueryOrderResult result = success(3);
+        cache.putOrders(0, CHANNEL, "bill", null, null, null, null, null, result, cache.getGeneration());
+
+        assertSame(result, cache.getOrders(0, CHANNEL, "bill", null, null, null, null, null));
+        assertNull(cache.getOrders(0, CHANNEL, "other", null, null, null, null, null));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void doesNotCacheFailures() {
+        cache.putOrders(0, CHANNEL, "bill", null, null, null, null, null,
+                new BCQueryOrderResult(20, "APP_INNER_FAIL", "Network Error", 0, null),
+                cache.getGeneration());
+
+        assertNull(cache.getOrders(0, CHANNEL, "bill", null, null, null, null, null));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByOrderCount() {
+        cache.putOrders(0, CHANNEL, "a", null, null, null, null, null, success(49), cache.getGeneration());
+        cache.putOrders(0, CHANNEL, "b", null, null, null, null, null, success(49), cache.getGeneration());
+        cache.getOrders(0, CHANNEL, "a", null, null, null, null, null);
+
+        //总大小超过100, 淘汰最久未使用的b
+        cache.putOrders(0, CHANNEL, "c", null, null, null, null, null, success(10), cache.getGeneration());
+
+        assertNotNull(cache.getOrders(0, CHANNEL, "a", null, null, null, null, null));
+        assertNull(cache.getOrders(0, CHANNEL, "b", null, null, null, null, null));
+        assertNotNull(cache.getOrders(0, CHANNEL, "c", null, null, null, null, null));
+    }
+
+    @Test
+    public void invalidateBillRemovesRelatedAndOpenWindowResults() {
+        BCQueryRefundStatusResult status = new BCQueryRefundStatusResult(0, "OK", "", "SUCCESS");
+
+        cache.putOrders(0, CHANNEL, "bill", null, null, null, null, null, success(1), cache.getGeneration());
+        cache.putOrders(0, CHANNEL, "other", null, null, null, null, null, success(1), cache.getGeneration());
+        cache.putOrders(0, CHANNEL, null, null, null, null, 0, 10, success(10), cache.getGeneration());
+        cache.putOrders(0, CHANNEL, null, null, CLOSED_START, CLOSED_END, 0, 10, success(10),
+                cache.getGeneration());
+        cache.putRefundStatus(CHANNEL, "refund", status, cache.getGeneration());
+
+        cache.invalidateBill("bill");
+
+        assertNull(cache.getOrders(0, CHANNEL, "bill", null, null, null, null, null));
+        assertNull(cache.getOrders(0, CHANNEL, null, null, null, null, 0, 10));
+        assertNotNull(cache.getOrders(0, CHANNEL, "other", null, null, null, null, null));
+        assertNotNull(cache.getOrders(0, CHANNEL, null, null, CLOSED_START, CLOSED_END, 0, 10));
+        assertSame(status, cache.getRefundStatus(CHANNEL, "refund"));
+    }
+
+    @Test
+    public void dropsResultStartedBeforeInvalidation() {
+        long generation = cache.getGeneration();
+
+        //查询进行中订单状态发生变化
+        cache.invalidateBill("bill");
+        cache.putOrders(0, CHANNEL, "bill", null, null, null, null, null, success(1), generation);
+        cache.putRefundStatus(CHANNEL, "refund",
+                new BCQueryRefundStatusResult(0, "OK", "", "PROCESSING"), generation);
+
+        assertNull(cache.getOrders(0, CHANNEL, "bill", null, null, null, null, null));
+        assertNull(cache.getRefundStatus(CHANNEL, "refund"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void queryUsesCacheUntilInvalidated() {
+        BCQuery query = BCQuery.getInstance();
+
+        BCQueryOrderResult first = query.queryBills(CHANNEL, null, null, null, 0, 10);
+        assertEquals(Integer.valueOf(0), first.getResultCode());
+        assertEquals(10, first.getOrders().size());
+
+        assertSame(first, query.queryBills(CHANNEL, null, null, null, 0, 10));
+        assertEquals(1, service.getRequestCount());
+
+        query.invalidateCache("bc1440000000000");
+
+        BCQueryOrderResult refreshed = query.queryBills(CHANNEL, null, null, null, 0, 10);
+        assertEquals(Integer.valueOf(0), refreshed.getResultCode());
+        assertEquals(2, service.getRequestCount());
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * BCRetryPolicyTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BCRetryPolicyTest {
+
+    @Test
+    public void backoffStaysWithinExponentialCeiling() {
+        BCRetryPolicy policy = new BCRetryPolicy(100, 1000);
+
+        for (int attempt = 1; attempt <= 8; attempt++) {
+            long ceiling = Math.min(1000, 100L << (attempt - 1));
+            for (int i = 0; i < 200; i++) {
+                long backoff = policy.backoffMillis(attempt);
+                assertTrue(backoff >= 0 && backoff <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void budgetAllowsBurstThenRatio() {
+        BCRetryPolicy policy = new BCRetryPolicy(100, 1000);
+
+        //初始预算允许10次突发重试
+        for (int i = 0; i < 10; i++)
+            assertTrue(policy.tryAcquireRetry());
+        assertFalse(policy.tryAcquireRetry());
+
+        //之后每10个请求约增加1次重试
+        for (int i = 0; i < 5; i++)
+            policy.onRequest();
+        assertFalse(policy.tryAcquireRetry());
+
+        for (int i = 0; i < 10; i++)
+            policy.onRequest();
+        assertTrue(policy.tryAcquireRetry());
+        assertFalse(policy.tryAcquireRetry());
+    }
+
+    @Test
+    public void budgetIsCapped() {
+        BCRetryPolicy policy = new BCRetryPolicy(100, 1000);
+
+        for (int i = 0; i < 1000; i++)
+            policy.onRequest();
+
+        int retries = 0;
+        while (policy.tryAcquireRetry())
+            retries++;
+        assertEquals(10, retries);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * BCSignerTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 预先编码的签名与原来的BCMD5Util.getMessageDigest(appId + timestamp + appSecret)一致
+ */
+public class BCSignerTest {
+
+    private static final String APP_ID = "c5d1cba1-5e3f-4ba0-941d-9b0a371fe719";
+    private static final String APP_SECRET = "39a7a518-9ac8-4a9e-87bc-7885f33cf18c";
+
+    @Test
+    public void matchesMessageDigestForTypicalTimestamps() {
+        BCSigner signer = new BCSigner(APP_ID, APP_SECRET);
+
+        assertSameSign(signer, 1440000000000L);
+        assertSameSign(signer, System.currentTimeMillis());
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++)
+            assertSameSign(signer, random.nextLong());
+    }
+
+    @Test
+    public void matchesMessageDigestForDecimalBoundaries() {
+        BCSigner signer = new BCSigner(APP_ID, APP_SECRET);
+
+        assertSameSign(signer, 0);
+        assertSameSign(signer, 1);
+        assertSameSign(signer, -1);
+        assertSameSign(signer, Long.MAX_VALUE);
+        assertSameSign(signer, Long.MIN_VALUE);
+        assertSameSign(signer, Long.MIN_VALUE + 1);
+
+        for (long power = 10; power > 0 && power <= Long.MAX_VALUE / 10; power *= 10) {
+            assertSameSign(signer, power);
+            assertSameSign(signer, power - 1);
+            assertSameSign(signer, -power);
+            assertSameSign(signer, -power + 1);
+        }
+    }
+
+    @Test
+    public void matchesMessageDigestForShortAndEmptyKeys() {
+        assertSameSign(new BCSigner("", ""), "", 1440000000000L);
+        assertSameSign(new BCSigner("a", "b"), "b", -1440000000000L);
+    }
+
+    @Test
+    public void reusesSignatureForSameTimestamp() {
+        BCSigner signer = new BCSigner(APP_ID, APP_SECRET);
+
+        BCSigner.Signature first = signer.sign(1440000000000L);
+        assertSame(first, signer.sign(1440000000000L));
+        assertEquals(1440000000000L, first.getTimestamp());
+    }
+
+    @Test
+    public void signsConcurrentlyOnSeparateWorkspaces() throws Exception {
+        final BCSigner signer = new BCSigner(APP_ID, APP_SECRET);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                final long base = t * 1000000L;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (long i = 0; i < 500; i++)
+                            assertSameSign(signer, base + i);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertSameSign(BCSigner signer, long timestamp) {
+        assertSameSign(signer, APP_SECRET, timestamp);
+    }
+
+    private static void assertSameSign(BCSigner signer, String appSecret, long timestamp) {
+        String expected = BCMD5Util.getMessageDigest(signer.getAppId() + timestamp + appSecret);
+        BCSigner.Signature signature = signer.sign(timestamp);
+
+        assertEquals("timestamp " + timestamp, expected, signature.getSign());
+        assertEquals(timestamp, signature.getTimestamp());
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * BCSingleFlightTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.beecloud.async.BCCallback;
+import cn.beecloud.async.BCFuture;
+import cn.beecloud.async.BCResult;
+import cn.beecloud.entity.BCQueryOrderResult;
+import cn.beecloud.entity.BCRestfulCommonResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BCSingleFlightTest {
+
+    private BCSingleFlight singleFlight;
+    private BCTaskExecutor executor;
+
+    @Before
+    public void setUp() {
+        singleFlight = new BCSingleFlight();
+        executor = new BCTaskExecutor("test", 4, 16);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void joinsInFlightCall() throws Exception {
+        BlockingCall call = new BlockingCall();
+        BCFuture<BCQueryOrderResult> first = new BCFuture<BCQueryOrderResult>();
+        BCFuture<BCQueryOrderResult> second = new BCFuture<BCQueryOrderResult>();
+
+        singleFlight.execute("key", first, executor, call);
+        call.awaitStarted();
+        singleFlight.execute("key", second, executor, call);
+
+        assertEquals(1, singleFlight.getCoalescedCount());
+        assertEquals(1, singleFlight.getInFlightCount());
+
+        call.release();
+        BCQueryOrderResult result = first.get(2, TimeUnit.SECONDS);
+        assertSame(result, second.get(2, TimeUnit.SECONDS));
+        assertEquals(1, call.executions.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void differentKeysRunSeparately() throws Exception {
+        BlockingCall call = new BlockingCall();
+        call.release();
+
+        BCFuture<BCQueryOrderResult> first = new BCFuture<BCQueryOrderResult>();
+        BCFuture<BCQueryOrderResult> second = new BCFuture<BCQueryOrderResult>();
+        singleFlight.execute("a", first, executor, call);
+        singleFlight.execute("b", second, executor, call);
+
+        first.get(2, TimeUnit.SECONDS);
+        second.get(2, TimeUnit.SECONDS);
+        assertEquals(2, call.executions.get());
+        assertEquals(0, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void cancellingOneCallerKeepsCallRunning() throws Exception {
+        BlockingCall call = new BlockingCall();
+        BCFuture<BCQueryOrderResult> first = new BCFuture<BCQueryOrderResult>();
+        BCFuture<BCQueryOrderResult> second = new BCFuture<BCQueryOrderResult>();
+
+        singleFlight.execute("key", first, executor, call);
+        call.awaitStarted();
+        singleFlight.execute("key", second, executor, call);
+
+        first.cancel(true);
+        assertFalse(call.aborted.await(100, TimeUnit.MILLISECONDS));
+
+        call.release();
+        assertEquals(Integer.valueOf(0), second.get(2, TimeUnit.SECONDS).getResultCode());
+    }
+
+    @Test
+    public void cancellingAllCallersAbortsCall() throws Exception {
+        BlockingCall call = new BlockingCall();
+        BCFuture<BCQueryOrderResult> first = new BCFuture<BCQueryOrderResult>();
+        BCFuture<BCQueryOrderResult> second = new BCFuture<BCQueryOrderResult>();
+
+        singleFlight.execute("key", first, executor, call);
+        call.awaitStarted();
+        singleFlight.execute("key", second, executor, call);
+
+        first.cancel(true);
+        second.cancel(true);
+
+        assertTrue(call.aborted.await(2, TimeUnit.SECONDS));
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void cancelledFlightIsNotJoined() throws Exception {
+        BlockingCall cancelledCall = new BlockingCall();
+        BCFuture<BCQueryOrderResult> cancelled = new BCFuture<BCQueryOrderResult>();
+
+        singleFlight.execute("key", cancelled, executor, cancelledCall);
+        cancelledCall.awaitStarted();
+        cancelled.cancel(true);
+
+        //新的调用方重新发起请求, 而不是等待被中止的请求
+        BlockingCall call = new BlockingCall();
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        singleFlight.execute("key", future, executor, call);
+        call.awaitStarted();
+        call.release();
+
+        assertEquals(Integer.valueOf(0), future.get(2, TimeUnit.SECONDS).getResultCode());
+        assertEquals(1, call.executions.get());
+        assertEquals(0, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void callerCancelledBeforeJoiningDoesNotAbortOthers() throws Exception {
+        BlockingCall call = new BlockingCall();
+        BCFuture<BCQueryOrderResult> first = new BCFuture<BCQueryOrderResult>();
+        BCFuture<BCQueryOrderResult> second = new BCFuture<BCQueryOrderResult>();
+
+        singleFlight.execute("key", first, executor, call);
+        call.awaitStarted();
+
+        second.cancel(true);
+        singleFlight.execute("key", second, executor, call);
+        assertFalse(call.aborted.await(100, TimeUnit.MILLISECONDS));
+
+        call.release();
+        assertEquals(Integer.valueOf(0), first.get(2, TimeUnit.SECONDS).getResultCode());
+    }
+
+    @Test
+    public void runtimeExceptionFailsAllCallers() throws Exception {
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        singleFlight.execute("key", future, executor, new BlockingCall() {
+            @Override
+            BCResult execute() {
+                throw new IllegalStateException("broken response");
+            }
+        });
+
+        BCQueryOrderResult result = future.get(2, TimeUnit.SECONDS);
+        assertEquals(BCRestfulCommonResult.APP_INNER_FAIL_NUM, result.getResultCode());
+        assertEquals("broken response", result.getErrDetail());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void plainCallbackPreventsAbort() throws Exception {
+        BlockingCall call = new BlockingCall();
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        final CountDownLatch plainDone = new CountDownLatch(1);
+
+        singleFlight.execute("key", future, executor, call);
+        call.awaitStarted();
+        singleFlight.execute("key", new BCCallback() {
+            @Override
+            public void done(BCResult result) {
+                plainDone.countDown();
+            }
+        }, executor, call);
+
+        future.cancel(true);
+        assertFalse(call.aborted.await(100, TimeUnit.MILLISECONDS));
+
+        call.release();
+        assertTrue(plainDone.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectedCallFailsAllCallers() throws Exception {
+        executor.shutdown();
+
+        BCFuture<BCQueryOrderResult> future = new BCFuture<BCQueryOrderResult>();
+        singleFlight.execute("key", future, executor, new BlockingCall());
+
+        assertEquals(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                future.get(2, TimeUnit.SECONDS).getResultCode());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    /**
+     * 等待release后返回成功的结果, 通过BCFuture取消时记录中止
+     */
+    static class BlockingCall extends BCSingleFlight.Call {
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final CountDownLatch aborted = new CountDownLatch(1);
+
+        @Override
+        BCResult execute() {
+            executions.incrementAndGet();
+
+            //与网络请求一样, 把中止动作绑定到执行中的BCFuture上
+            final Thread worker = Thread.currentThread();
+            BCFuture.current().setCancelAction(new Runnable() {
+                @Override
+                public void run() {
+                    aborted.countDown();
+                    worker.interrupt();
+                }
+            });
+            started.countDown();
+
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                return failure("aborted");
+            }
+            return new BCQueryOrderResult(0, "OK", "", 0, null);
+        }
+
+        @Override
+        BCResult failure(String errDetail) {
+            return new BCQueryOrderResult(BCRestfulCommonResult.APP_INNER_FAIL_NUM,
+                    BCRestfulCommonResult.APP_INNER_FAIL, errDetail, 0, null);
+        }
+
+        void awaitStarted() throws InterruptedException {
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * BCTaskExecutorTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BCTaskExecutorTest {
+
+    private BCTaskExecutor executor;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        executor = new BCTaskExecutor("test", 1, 2);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws InterruptedException {
+        fill(2);
+
+        assertRejected();
+        assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    public void growsQueueInPlace() throws InterruptedException {
+        fill(2);
+
+        executor.setQueueCapacity(3);
+        executor.execute(blocking());
+
+        assertEquals(3, executor.getQueueCapacity());
+        assertEquals(3, executor.getQueueDepth());
+        assertRejected();
+    }
+
+    @Test
+    public void shrinksQueueWithoutDroppingWaitingTasks() throws InterruptedException {
+        fill(2);
+
+        executor.setQueueCapacity(1);
+
+        assertEquals(2, executor.getQueueDepth());
+        assertRejected();
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void setThreadPoolQueueCapacityKeepsExecutors() throws InterruptedException {
+        BCTaskExecutor pay = BCCache.payExecutorService;
+        BCTaskExecutor query = BCCache.queryExecutorService;
+        try {
+            BeeCloud.setThreadPoolQueueCapacity(8, 32);
+
+            assertSame(pay, BCCache.payExecutorService);
+            assertSame(query, BCCache.queryExecutorService);
+            assertFalse(pay.isShutdown());
+            assertEquals(8, pay.getQueueCapacity());
+            assertEquals(32, query.getQueueCapacity());
+
+            //之前拿到的引用仍然可以提交任务
+            final CountDownLatch done = new CountDownLatch(1);
+            pay.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            BeeCloud.setThreadPoolQueueCapacity(16, 64);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        executor.setQueueCapacity(0);
+    }
+
+    /**
+     * 占满唯一的线程, 再放入queued个等待的任务
+     */
+    private void fill(int queued) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                awaitRelease();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < queued; i++)
+            executor.execute(blocking());
+        assertEquals(queued, executor.getQueueDepth());
+    }
+
+    private Runnable blocking() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                awaitRelease();
+            }
+        };
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void assertRejected() {
+        try {
+            executor.execute(blocking());
+            fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            //队列已满
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * BCUrlConnectionTransportTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BCUrlConnectionTransportTest {
+
+    private static final String JSON = "{\"channel\":\"WX_NATIVE\",\"title\":\"订单\"}";
+
+    private EchoServer server;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EchoServer();
+        server.start();
+
+        listener = new RecordingListener();
+        BeeCloud.setHttpTransport(new BCUrlConnectionTransport());
+        BCHttpClientUtil.setHosts(new String[]{"http://127.0.0.1:" + server.getPort()});
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        BeeCloud.setEventListener(null);
+        BeeCloud.setHttpTransport(null);
+        BCHttpClientUtil.setHosts(null);
+        server.close();
+    }
+
+    @Test
+    public void postsBody() throws IOException {
+        assertEchoed(BCHttpClientUtil.sendPost(BCHttpClientUtil.getBillPayURL(), JSON));
+    }
+
+    @Test
+    public void postsBodyWithEventListener() throws IOException {
+        BeeCloud.setEventListener(listener);
+
+        assertEchoed(BCHttpClientUtil.sendPost(BCHttpClientUtil.getBillPayURL(), JSON));
+
+        //http没有新建连接的通知, 不额外解析域名, 也不报告连接阶段
+        assertFalse(listener.phases.contains(BCEventListener.Phase.DNS));
+        assertFalse(listener.phases.contains(BCEventListener.Phase.CONNECT));
+        assertTrue(listener.phases.contains(BCEventListener.Phase.REQUEST_WRITE));
+        assertTrue(listener.phases.contains(BCEventListener.Phase.TIME_TO_FIRST_BYTE));
+        assertNull(listener.error);
+    }
+
+    @Test
+    public void mapsPoolSettingsToSystemProperties() {
+        String maxConnections = System.getProperty("http.maxConnections");
+        String keepAliveDuration = System.getProperty("http.keepAliveDuration");
+        try {
+            BeeCloud.setConnectionPoolSize(16, 6);
+            BeeCloud.setConnectionIdleTimeout(45000L);
+
+            assertEquals("6", System.getProperty("http.maxConnections"));
+            assertEquals("45000", System.getProperty("http.keepAliveDuration"));
+        } finally {
+            BeeCloud.setConnectionPoolSize(16, 4);
+            BeeCloud.setConnectionIdleTimeout(30000L);
+            restoreProperty("http.maxConnections", maxConnections);
+            restoreProperty("http.keepAliveDuration", keepAliveDuration);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedHttpPostReturnsHttpResponse() throws IOException {
+        Map<String, Object> para = new LinkedHashMap<String, Object>();
+        para.put("channel", "WX_NATIVE");
+        para.put("title", "订单");
+
+        HttpResponse response = BCHttpClientUtil.httpPost(BCHttpClientUtil.getBillPayURL(), para);
+
+        assertNotNull(response);
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals(JSON, EntityUtils.toString(response.getEntity(), "UTF-8"));
+        assertEquals("POST /1/rest/bill", server.requestLine);
+    }
+
+    private static void restoreProperty(String key, String value) {
+        if (value == null)
+            System.clearProperty(key);
+        else
+            System.setProperty(key, value);
+    }
+
+    private void assertEchoed(BCHttpResponse response) throws IOException {
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(JSON, response.getContentAsString());
+        assertEquals("POST /1/rest/bill", server.requestLine);
+        assertTrue(server.contentType.startsWith("application/json"));
+    }
+
+    private static class RecordingListener implements BCEventListener {
+        final List<Phase> phases = Collections.synchronizedList(new ArrayList<Phase>());
+        volatile IOException error;
+
+        @Override
+        public void onRequestStart(BCHttpRequest request) {
+        }
+
+        @Override
+        public void onPhase(BCHttpRequest request, Phase phase, long nanos) {
+            phases.add(phase);
+        }
+
+        @Override
+        public void onRequestEnd(BCHttpRequest request, int statusCode, IOException error, long totalNanos) {
+            this.error = error;
+        }
+    }
+
+    /**
+     * 只处理一个请求的http服务, 原样返回请求体
+     */
+    private static class EchoServer extends Thread {
+        private final ServerSocket serverSocket;
+
+        volatile String requestLine;
+        volatile String contentType;
+
+        EchoServer() throws IOException {
+            serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    handle(socket.getInputStream(), socket.getOutputStream());
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void handle(InputStream in, OutputStream out) throws IOException {
+            String line = readLine(in);
+            requestLine = line.substring(0, line.lastIndexOf(' '));
+
+            int contentLength = 0;
+            while ((line = readLine(in)).length() > 0) {
+                int colon = line.indexOf(':');
+                String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+                String value = line.substring(colon + 1).trim();
+                if ("content-length".equals(name))
+                    contentLength = Integer.parseInt(value);
+                else if ("content-type".equals(name))
+                    contentType = value;
+            }
+
+            byte[] body = new byte[contentLength];
+            int read = 0;
+            while (read < contentLength) {
+                int count = in.read(body, read, contentLength - read);
+                if (count == -1)
+                    throw new IOException("unexpected end of body");
+                read += count;
+            }
+
+            String head = "HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: application/json; charset=UTF-8\r\n" +
+                    "Content-Length: " + body.length + "\r\n" +
+                    "Connection: close\r\n\r\n";
+            out.write(head.getBytes("US-ASCII"));
+            out.write(body);
+            out.flush();
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (c != '\r')
+                    line.write(c);
+            }
+            return line.toString("US-ASCII");
+        }
+    }
+}
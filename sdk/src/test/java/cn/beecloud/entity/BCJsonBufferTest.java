@@ -0,0 +1,115 @@
+/**
+ * BCJsonBufferTest.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.entity;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 手写的UTF-8和json转义需要与原来Gson加StringEntity发送的字节完全一致
+ */
+public class BCJsonBufferTest {
+
+    @Test
+    public void escapesQuotesAndBackslashes() throws IOException {
+        assertSameAsGson("say \"hi\" \\ back\\slash \\\"");
+    }
+
+    @Test
+    public void escapesControlCharacters() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (char c = 0; c < 0x20; c++)
+            builder.append(c);
+        builder.append('\u007f');
+        assertSameAsGson(builder.toString());
+    }
+
+    @Test
+    public void escapesHtmlCharacters() throws IOException {
+        assertSameAsGson("<script>a&b='c'</script>");
+    }
+
+    @Test
+    public void escapesLineAndParagraphSeparators() throws IOException {
+        assertSameAsGson("a\u2028b\u2029c");
+    }
+
+    @Test
+    public void encodesMultiByteCharacters() throws IOException {
+        assertSameAsGson("安卓微信支付测试 \u00e9 \u07ff \u0800 \uffff");
+    }
+
+    @Test
+    public void encodesNonBmpCharacters() throws IOException {
+        assertSameAsGson("emoji \uD83D\uDE00 and \uD840\uDC0B");
+    }
+
+    @Test
+    public void replacesUnpairedSurrogates() throws IOException {
+        //与String.getBytes一样编码为?, 只比较发送的字节
+        String value = "a\uD83Db \uDE00c \uD83D";
+        BCJsonBuffer buffer = BCJsonBuffer.obtain();
+        buffer.beginObject().field("value", value).endObject();
+
+        assertArrayEquals(toGson(value).getBytes("UTF-8"), bodyBytes(buffer));
+    }
+
+    @Test
+    public void writesNumbersAndNestedMaps() throws IOException {
+        Map<String, String> optional = new LinkedHashMap<String, String>();
+        optional.put("k<1>", "v\"1\"");
+        optional.put("k2", "值2");
+
+        BCJsonBuffer buffer = BCJsonBuffer.obtain();
+        buffer.beginObject()
+                .field("min", Long.MIN_VALUE)
+                .field("max", Long.MAX_VALUE)
+                .field("zero", 0)
+                .field("negative", -42)
+                .field("absent", (String) null)
+                .field("optional", optional)
+                .endObject();
+
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("min", Long.MIN_VALUE);
+        expected.put("max", Long.MAX_VALUE);
+        expected.put("zero", 0);
+        expected.put("negative", -42);
+        expected.put("optional", optional);
+
+        assertArrayEquals(BCJsonCodec.getGson().toJson(expected).getBytes("UTF-8"), bodyBytes(buffer));
+    }
+
+    private static String toGson(String value) {
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        expected.put("value", value);
+        return BCJsonCodec.getGson().toJson(expected);
+    }
+
+    private static void assertSameAsGson(String value) throws IOException {
+        String json = toGson(value);
+
+        BCJsonBuffer buffer = BCJsonBuffer.obtain();
+        buffer.beginObject().field("value", value).endObject();
+
+        assertEquals(json, buffer.toString());
+        assertArrayEquals(json.getBytes("UTF-8"), bodyBytes(buffer));
+    }
+
+    private static byte[] bodyBytes(BCJsonBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.asBody().writeTo(out);
+        assertEquals(out.size(), buffer.asBody().getContentLength());
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * BCInMemoryTransport.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+import cn.beecloud.BCContentEncoding;
+import cn.beecloud.BCHttpRequest;
+import cn.beecloud.BCHttpResponse;
+import cn.beecloud.BCHttpTransport;
+
+/**
+ * 在进程内由BCMockService直接处理请求的BCHttpTransport, 不经过网络和序列化之外的开销
+ * 返回内容同样按Accept-Encoding压缩, 用于测试, 以及单独测量SDK自身的开销(包括解压和解析):
+ * BeeCloud.setHttpTransport(new BCInMemoryTransport(server))
+ * 传入BCMockServer时不需要start, 模拟的延迟在调用线程中等待, abort时中断等待
+ */
+public class BCInMemoryTransport implements BCHttpTransport {
+
+    private final BCMockService server;
+
+    /**
+     * 构造函数
+     * @param server    处理请求的模拟服务
+     */
+    public BCInMemoryTransport(BCMockService server) {
+        this.server = server;
+    }
+
+    @Override
+    public BCHttpResponse execute(BCHttpRequest request) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(request.getUrl());
+        } catch (URISyntaxException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        BCContentEncoding.acceptCompressed(request);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (request.getBody() != null)
+            request.getBody().writeTo(body);
+
+        final Thread caller = Thread.currentThread();
+        request.setAbortAction(new Runnable() {
+            @Override
+            public void run() {
+                caller.interrupt();
+            }
+        });
+
+        BCMockService.Response response;
+        try {
+            response = server.handle(uri.getPath(), uri.getRawQuery(),
+                    new ByteArrayInputStream(body.toByteArray()));
+            response = server.encode(response, request.getHeaders().get("Accept-Encoding"));
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("request aborted");
+        } finally {
+            //abort只应中断本次请求
+            request.setAbortAction(null);
+            if (request.isAborted())
+                Thread.interrupted();
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "application/json; charset=UTF-8");
+        if (response.contentEncoding != null)
+            headers.put("content-encoding", response.contentEncoding);
+
+        return new BCHttpResponse(response.statusCode, headers, new ByteArrayInputStream(response.body));
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
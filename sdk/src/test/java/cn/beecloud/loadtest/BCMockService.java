@@ -0,0 +1,353 @@
+/**
+ * BCMockService.java
+ *
+ * Copyright (c) 2015 BeeCloud. All rights reserved.
+ */
+package cn.beecloud.loadtest;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.net.URLDecoder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 模拟的BeeCloud REST服务的请求处理, 用于单元测试、压力和延迟测试
+ * 提供rest/bill(支付和二维码), rest/bills, rest/refunds和rest/refund/status,
+ * 响应延迟服从对数正态分布, 可以设置中位数、p99、错误率和每页的最大记录数,
+ * 请求声明Accept-Encoding时以gzip或者deflate压缩返回内容
+ * 通过BCInMemoryTransport在进程内直接处理请求, 或者由benchmark中的BCMockServer通过http提供服务
+ * 只依赖Android也具备的类, 可以在sdk的单元测试中使用
+ */
+public class BCMockService {
+
+    //p99对应的标准正态分位数
+    private static final double Z_99 = 2.326;
+
+    private double medianMillis = 20;
+    private double p99Millis = 200;
+    private double errorRate;
+    private boolean compression = true;
+    private int maxPageSize = 50;
+    private int totalOrders = 10000;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong bodyBytes = new AtomicLong();
+
+    private final ThreadLocal<Random> randoms = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    /**
+     * 设置响应延迟的分布
+     * @param medianMillis  延迟中位数, 以毫秒为单位, 0表示没有延迟
+     * @param p99Millis     延迟p99, 以毫秒为单位, 不小于medianMillis
+     */
+    public void setLatency(double medianMillis, double p99Millis) {
+        this.medianMillis = medianMillis;
+        this.p99Millis = Math.max(medianMillis, p99Millis);
+    }
+
+    /**
+     * @param errorRate     返回500错误的比例, [0, 1]
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param compression   请求声明Accept-Encoding时, 是否以gzip或者deflate压缩返回内容, 默认为true
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param maxPageSize   每页返回的最大记录数, 请求的limit更大时以此为准
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * @param totalOrders   可以查询到的订单总数
+     */
+    public void setTotalOrders(int totalOrders) {
+        this.totalOrders = totalOrders;
+    }
+
+    /**
+     * @return  已经收到的请求数
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return  模拟的500错误数
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return  已经发送的返回内容字节数, 压缩时为压缩后的字节数
+     */
+    public long getBodyBytes() {
+        return bodyBytes.get();
+    }
+
+    private long sampleLatencyMillis() {
+        if (medianMillis <= 0)
+            return 0;
+
+        double mu = Math.log(medianMillis);
+        double sigma = (Math.log(p99Millis) - mu) / Z_99;
+        return Math.round(Math.exp(mu + sigma * randoms.get().nextGaussian()));
+    }
+
+    private void writeCommon(JsonWriter writer) throws IOException {
+        writer.name("result_code").value(0);
+        writer.name("result_msg").value("OK");
+        writer.name("err_detail").value("");
+    }
+
+    private void writeBill(Params params, JsonWriter writer) throws IOException {
+        String channel = params.channel;
+
+        writeCommon(writer);
+        writer.name("id").value(Long.toHexString(randoms.get().nextLong()));
+
+        if ("WX_NATIVE".equals(channel)) {
+            writer.name("code_url").value("weixin://wxpay/bizpayurl?pr=" + requestCount.get());
+        } else if ("ALI_QRCODE".equals(channel)) {
+            writer.name("url").value("https://qr.alipay.com/mock" + requestCount.get());
+            writer.name("html").value("<form id=\"alipaysubmit\"></form>");
+        } else if ("ALI_OFFLINE_QRCODE".equals(channel)) {
+            writer.name("qr_code").value("https://qr.alipay.com/offline" + requestCount.get());
+        } else if ("WX_APP".equals(channel)) {
+            writer.name("app_id").value("wxmock");
+            writer.name("partner_id").value("1000000000");
+            writer.name("prepay_id").value("wx" + requestCount.get());
+            writer.name("package").value("Sign=WXPay");
+            writer.name("nonce_str").value("mock");
+            writer.name("timestamp").value(System.currentTimeMillis() / 1000);
+            writer.name("pay_sign").value("mock");
+        } else if ("ALI_APP".equals(channel)) {
+            writer.name("order_string").value("partner=\"mock\"");
+        } else if ("UN_APP".equals(channel)) {
+            writer.name("tn").value("201508240000000000");
+        }
+    }
+
+    private void writeOrders(Params params, JsonWriter writer, boolean refund) throws IOException {
+
+        int skip = Math.max(0, params.skip);
+        int limit = Math.min(maxPageSize, params.limit > 0 ? params.limit : 10);
+        int count = Math.max(0, Math.min(limit, totalOrders - skip));
+
+        writeCommon(writer);
+        writer.name("count").value(count);
+        writer.name(refund ? "refunds" : "bills");
+        writer.beginArray();
+
+        //订单按创建时间均匀分布在请求的时间范围内
+        long start = params.startTime > 0 ? params.startTime : 1440000000000L;
+        long end = params.endTime > start ? params.endTime : start + 24L * 60 * 60 * 1000;
+        long step = Math.max(1, (end - start) / Math.max(1, totalOrders));
+
+        for (int i = skip; i < skip + count; i++) {
+            writer.beginObject();
+            writer.name("bill_no").value("bc" + (1440000000000L + i));
+            writer.name("total_fee").value(100 + i % 1000);
+            writer.name("channel").value(params.channel == null ? "WX" : params.channel);
+            writer.name("title").value("mock订单" + i);
+
+            if (refund) {
+                writer.name("refund_no").value("rf" + (1440000000000L + i));
+                writer.name("refund_fee").value(100 + i % 1000);
+                writer.name("finish").value(true);
+                writer.name("result").value(i % 3 != 0);
+            } else {
+                writer.name("spay_result").value(i % 2 == 0);
+            }
+
+            writer.name("created_time").value(start + i * step);
+            writer.endObject();
+        }
+
+        writer.endArray();
+    }
+
+    private static Params readParams(InputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = body.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+
+        return parseParams(out.toString("UTF-8"));
+    }
+
+    private static Params readParams(String rawQuery) throws IOException {
+        if (rawQuery == null || !rawQuery.startsWith("para="))
+            return new Params();
+
+        return parseParams(URLDecoder.decode(rawQuery.substring("para=".length()), "UTF-8"));
+    }
+
+    private static Params parseParams(String json) throws IOException {
+        Params params = new Params();
+        if (json.length() == 0)
+            return params;
+
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("channel".equals(name))
+                params.channel = reader.nextString();
+            else if ("skip".equals(name))
+                params.skip = reader.nextInt();
+            else if ("limit".equals(name))
+                params.limit = reader.nextInt();
+            else if ("start_time".equals(name))
+                params.startTime = reader.nextLong();
+            else if ("end_time".equals(name))
+                params.endTime = reader.nextLong();
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+
+        return params;
+    }
+
+    /**
+     * 请求中用到的参数
+     */
+    private static class Params {
+        String channel;
+        int skip;
+        int limit;
+        long startTime;
+        long endTime;
+    }
+
+    /**
+     * 处理一个请求, 模拟延迟和错误, 供BCMockServer和BCInMemoryTransport共用
+     * @param path          请求路径, 比如/1/rest/bills
+     * @param rawQuery      未解码的查询参数, 可为null
+     * @param requestBody   请求体
+     * @return              状态码和json内容, 参数不是合法的json时为400
+     * @throws IOException  生成返回内容失败
+     * @throws InterruptedException 模拟延迟时被中断
+     */
+    Response handle(String path, String rawQuery, InputStream requestBody)
+            throws IOException, InterruptedException {
+        requestCount.incrementAndGet();
+
+        long latency = sampleLatencyMillis();
+        if (latency > 0)
+            TimeUnit.MILLISECONDS.sleep(latency);
+
+        if (randoms.get().nextDouble() < errorRate) {
+            errorCount.incrementAndGet();
+            return new Response(500, new byte[0]);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(body, "UTF-8"));
+
+        try {
+            writer.beginObject();
+            if ("/1/rest/bill".equals(path)) {
+                writeBill(readParams(requestBody), writer);
+            } else if ("/1/rest/bills".equals(path)) {
+                writeOrders(readParams(rawQuery), writer, false);
+            } else if ("/1/rest/refunds".equals(path)) {
+                writeOrders(readParams(rawQuery), writer, true);
+            } else if ("/1/rest/refund/status".equals(path)) {
+                writeCommon(writer);
+                writer.name("refund_status").value("SUCCESS");
+            } else {
+                return new Response(404, new byte[0]);
+            }
+            writer.endObject();
+            writer.close();
+        } catch (IOException e) {
+            //para不是合法的json, 或者json不完整
+            return new Response(400, new byte[0]);
+        } catch (RuntimeException e) {
+            //参数的类型不对
+            return new Response(400, new byte[0]);
+        }
+
+        return new Response(200, body.toByteArray());
+    }
+
+    /**
+     * 按Accept-Encoding压缩返回内容, 优先使用gzip, 并统计发送的字节数
+     * @param response          未压缩的结果
+     * @param acceptEncoding    请求头Accept-Encoding, 可为null
+     * @return                  压缩后的结果, 不需要压缩时为原来的结果
+     */
+    Response encode(Response response, String acceptEncoding) throws IOException {
+        String encoding = null;
+        if (compression && acceptEncoding != null && response.body.length > 0) {
+            if (acceptEncoding.contains("gzip"))
+                encoding = "gzip";
+            else if (acceptEncoding.contains("deflate"))
+                encoding = "deflate";
+        }
+
+        if (encoding == null) {
+            bodyBytes.addAndGet(response.body.length);
+            return response;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(response.body.length / 4 + 64);
+        OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(compressed) :
+                new DeflaterOutputStream(compressed);
+        out.write(response.body);
+        out.close();
+
+        bodyBytes.addAndGet(compressed.size());
+        return new Response(response.statusCode, compressed.toByteArray(), encoding);
+    }
+
+    /**
+     * 状态码和返回内容
+     */
+    static class Response {
+        final int statusCode;
+        final byte[] body;
+
+        //gzip或者deflate, 未压缩时为null
+        final String contentEncoding;
+
+        Response(int statusCode, byte[] body) {
+            this(statusCode, body, null);
+        }
+
+        Response(int statusCode, byte[] body, String contentEncoding) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.contentEncoding = contentEncoding;
+        }
+    }
+}